@@ -0,0 +1,93 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Builds plaintext TLS 1.2 records as sent by a server, for feeding the connector without a real TLS implementation
+ */
+final class CannedRecords {
+	static final int CONTENT_TYPE_ALERT = 21;
+	static final int CONTENT_TYPE_HANDSHAKE = 22;
+
+	static final int HANDSHAKE_TYPE_SERVER_HELLO = 2;
+	static final int HANDSHAKE_TYPE_CERTIFICATE = 11;
+	static final int HANDSHAKE_TYPE_SERVER_HELLO_DONE = 14;
+
+	static final int ALERT_LEVEL_FATAL = 2;
+	static final int ALERT_HANDSHAKE_FAILURE = 40;
+	// Not assigned, so it cannot be mapped to a name
+	static final int ALERT_UNASSIGNED = 255;
+
+	private CannedRecords() {
+	}
+
+	/**
+	 * @return A ServerHello selecting TLS_RSA_WITH_AES_128_CBC_SHA256 and a ServerHelloDone in a single record
+	 */
+	static byte[] serverHelloDone() {
+		ByteArrayOutputStream fragment = new ByteArrayOutputStream();
+		write(fragment, serverHello());
+		write(fragment, handshake(HANDSHAKE_TYPE_SERVER_HELLO_DONE, new byte[0]));
+		return record(CONTENT_TYPE_HANDSHAKE, fragment.toByteArray());
+	}
+
+	/**
+	 * The certificate is filled with zeros, so the flight can only be used where it is not parsed
+	 *
+	 * @param certificateLength Length of the Certificate message body
+	 * @return A ServerHello, Certificate and ServerHelloDone, each in its own record
+	 */
+	static byte[] serverHelloFlight(int certificateLength) {
+		ByteArrayOutputStream flight = new ByteArrayOutputStream();
+		write(flight, record(CONTENT_TYPE_HANDSHAKE, serverHello()));
+		write(flight, record(CONTENT_TYPE_HANDSHAKE, handshake(HANDSHAKE_TYPE_CERTIFICATE, new byte[certificateLength])));
+		write(flight, record(CONTENT_TYPE_HANDSHAKE, handshake(HANDSHAKE_TYPE_SERVER_HELLO_DONE, new byte[0])));
+		return flight.toByteArray();
+	}
+
+	static byte[] alert(int level, int description) {
+		return record(CONTENT_TYPE_ALERT, new byte[] { (byte) level, (byte) description });
+	}
+
+	private static byte[] serverHello() {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		// Protocol version
+		body.write(3);
+		body.write(3);
+		// Server random
+		write(body, new byte[32]);
+		// Empty session ID
+		body.write(0);
+		// TLS_RSA_WITH_AES_128_CBC_SHA256
+		body.write(0x00);
+		body.write(0x3c);
+		// NULL compression
+		body.write(0);
+		return handshake(HANDSHAKE_TYPE_SERVER_HELLO, body.toByteArray());
+	}
+
+	private static byte[] handshake(int type, byte[] body) {
+		byte[] message = new byte[4 + body.length];
+		message[0] = (byte) type;
+		message[1] = (byte) (body.length >> 16);
+		message[2] = (byte) (body.length >> 8);
+		message[3] = (byte) body.length;
+		System.arraycopy(body, 0, message, 4, body.length);
+		return message;
+	}
+
+	private static byte[] record(int contentType, byte[] fragment) {
+		byte[] record = new byte[5 + fragment.length];
+		record[0] = (byte) contentType;
+		record[1] = 3;
+		record[2] = 3;
+		record[3] = (byte) (fragment.length >> 8);
+		record[4] = (byte) fragment.length;
+		System.arraycopy(fragment, 0, record, 5, fragment.length);
+		return record;
+	}
+
+	private static void write(ByteArrayOutputStream out, byte[] data) {
+		out.write(data, 0, data.length);
+	}
+}
@@ -0,0 +1,106 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.rub.nds.tlsattacker.transport.TransportHandler;
+
+/**
+ * Receiving a server flight with the transport handlers over a loopback socket. A local thread answers every request
+ * byte with the same canned flight, so only the connector side of the connection is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FetchDataBenchmark {
+	static final byte[] REQUEST = new byte[] { 1 };
+
+	@Param({ "STREAM", "NIO" })
+	TransportType transport;
+
+	@Param({ "FLIGHT", "TIMEOUT" })
+	ReceiveMode receiveMode;
+
+	@Param({ "1024", "8192" })
+	int certificateLength;
+
+	private byte[] flight;
+	private ServerSocket serverSocket;
+	private Thread server;
+	private TransportHandler transportHandler;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		flight = CannedRecords.serverHelloFlight(certificateLength);
+
+		serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		server = new Thread(this::serve, "canned-server");
+		server.setDaemon(true);
+		server.start();
+
+		int port = serverSocket.getLocalPort();
+		if(transport == TransportType.NIO) {
+			transportHandler = new NioTransportHandler(1000, "localhost", port, false);
+		} else {
+			transportHandler = new ConnectorTransportHandler(1000, "localhost", port);
+		}
+		((ConnectorTransport) transportHandler).setReceiveMode(receiveMode);
+		transportHandler.initialize();
+	}
+
+	private void serve() {
+		try(Socket socket = serverSocket.accept()) {
+			socket.setTcpNoDelay(true);
+			InputStream in = socket.getInputStream();
+			OutputStream out = socket.getOutputStream();
+			while(in.read() != -1) {
+				out.write(flight);
+				out.flush();
+			}
+		} catch(IOException e) {
+			// The benchmark closed the connection
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException, InterruptedException {
+		transportHandler.closeConnection();
+		serverSocket.close();
+		server.join();
+	}
+
+	/**
+	 * Request a flight and fetch until all of it is received, as a TIMEOUT receive may return a partial flight
+	 */
+	@Benchmark
+	public int fetchFlight() throws IOException {
+		transportHandler.sendData(REQUEST);
+		int received = 0;
+		while(received < flight.length) {
+			received += transportHandler.fetchData().length;
+		}
+		return received;
+	}
+}
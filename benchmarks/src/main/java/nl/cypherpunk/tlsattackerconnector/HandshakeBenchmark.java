@@ -0,0 +1,94 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Executing input symbols against a real TLS server. By default the embedded target is used. Otherwise the server has
+ * to be started separately, for example with "openssl s_server -key key.pem -cert cert.pem -accept 4433", and only
+ * has to handle one connection at a time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class HandshakeBenchmark {
+	static final List<String> HANDSHAKE = Arrays.asList("ClientHello", "RSAClientKeyExchange", "ChangeCipherSpec", "Finished", "ApplicationData");
+
+	@Param({ "true" })
+	boolean embeddedTarget;
+
+	@Param({ "localhost" })
+	String targetHost;
+
+	@Param({ "4433" })
+	int targetPort;
+
+	@Param({ "100" })
+	int timeout;
+
+	@Param({ "FLIGHT" })
+	ReceiveMode receiveMode;
+
+	@Param({ "../messages" })
+	String messageDir;
+
+	private TLSAttackerConnector connector;
+	private ConnectorSession session;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		connector = new TLSAttackerConnector();
+		connector.targetHostname = targetHost;
+		connector.targetPort = targetPort;
+		connector.timeout = timeout;
+		connector.receiveMode = receiveMode;
+		if(embeddedTarget) {
+			connector.startEmbeddedTarget();
+		}
+		connector.initialise();
+		connector.loadMessages(messageDir);
+		session = connector.session;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		session.shutdown();
+		if(connector.embeddedTarget != null) {
+			connector.embeddedTarget.stop();
+		}
+	}
+
+	/**
+	 * Reset and execute a complete handshake followed by application data, one symbol at a time
+	 */
+	@Benchmark
+	public List<String> fullHandshake() throws Exception {
+		return session.runWord(HANDSHAKE);
+	}
+
+	/**
+	 * Close the connection and set up a new one
+	 */
+	@Benchmark
+	public void reset() throws Exception {
+		session.reset();
+	}
+}
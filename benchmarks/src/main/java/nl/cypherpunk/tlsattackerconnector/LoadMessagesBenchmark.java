@@ -0,0 +1,45 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading and parsing all messages in the message directory
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadMessagesBenchmark {
+	@Param({ "../messages" })
+	String messageDir;
+
+	private TLSAttackerConnector connector;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		connector = new TLSAttackerConnector();
+	}
+
+	@Benchmark
+	public Map<String, LoadedMessage> loadMessages() throws Exception {
+		// A new loader does not know any previously parsed messages, so every message is parsed again
+		connector.loadMessages(messageDir);
+		return connector.loadedMessages;
+	}
+}
@@ -0,0 +1,184 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.rub.nds.tlsattacker.core.config.Config;
+import de.rub.nds.tlsattacker.core.connection.OutboundConnection;
+import de.rub.nds.tlsattacker.core.state.State;
+import de.rub.nds.tlsattacker.core.state.TlsContext;
+import de.rub.nds.tlsattacker.transport.ConnectionEndType;
+import de.rub.nds.tlsattacker.transport.TransportHandler;
+
+/**
+ * Parsing a response and building its output string with {@link ConnectorSession#receiveMessages()}. The response is
+ * served from memory, so no time is spent waiting for the network.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReceiveMessagesBenchmark {
+	/**
+	 * Responses covering the handshake messages and both branches of the alert name mapping
+	 */
+	public enum Response {
+		HANDSHAKE, ALERT, ALERT_UNKNOWN
+	}
+
+	@Param({ "HANDSHAKE", "ALERT", "ALERT_UNKNOWN" })
+	Response response;
+
+	private byte[] data;
+	private CannedTransportHandler transportHandler;
+	private ConnectorSession session;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		switch(response) {
+		case ALERT:
+			data = CannedRecords.alert(CannedRecords.ALERT_LEVEL_FATAL, CannedRecords.ALERT_HANDSHAKE_FAILURE);
+			break;
+		case ALERT_UNKNOWN:
+			data = CannedRecords.alert(CannedRecords.ALERT_LEVEL_FATAL, CannedRecords.ALERT_UNASSIGNED);
+			break;
+		default:
+			data = CannedRecords.serverHelloDone();
+			break;
+		}
+
+		Config config = Config.createConfig();
+		config.setEnforceSettings(false);
+		// The connection is never set up, but the state needs it to create its context
+		config.setDefaultClientConnection(new OutboundConnection(4433, "localhost"));
+
+		TLSAttackerConnector connector = new TLSAttackerConnector();
+		connector.config = config;
+		session = new ConnectorSession(connector, config);
+
+		transportHandler = new CannedTransportHandler();
+		session.state = new State(config);
+		TlsContext context = session.state.getTlsContext();
+		context.setTransportHandler(transportHandler);
+		context.initTransportHandler();
+		context.initRecordLayer();
+	}
+
+	@Benchmark
+	public String receiveMessages() throws IOException {
+		transportHandler.respond(data);
+		return session.receiveMessages();
+	}
+
+	/**
+	 * Returns a prepared response once, after which nothing is received until the next response is prepared
+	 */
+	static class CannedTransportHandler extends TransportHandler implements ConnectorTransport {
+		private static final byte[] NOTHING = new byte[0];
+		private byte[] pending = NOTHING;
+
+		CannedTransportHandler() {
+			super(0, ConnectionEndType.CLIENT);
+		}
+
+		void respond(byte[] data) {
+			pending = data;
+		}
+
+		@Override
+		public byte[] fetchData() throws IOException {
+			byte[] data = pending;
+			pending = NOTHING;
+			return data;
+		}
+
+		@Override
+		public void initialize() throws IOException {
+			setStreams(new PushbackInputStream(new ByteArrayInputStream(NOTHING)), new ByteArrayOutputStream());
+		}
+
+		@Override
+		public boolean isClosed() throws IOException {
+			return false;
+		}
+
+		@Override
+		public void closeConnection() throws IOException {
+		}
+
+		@Override
+		public void closeClientConnection() throws IOException {
+		}
+
+		@Override
+		public void setReceiveMode(ReceiveMode receiveMode) {
+		}
+
+		@Override
+		public void setQuietTime(long quietTime) {
+		}
+
+		@Override
+		public void setSocketSettings(SocketSettings socketSettings) {
+		}
+
+		@Override
+		public void setRecordTiming(RecordTiming recordTiming) {
+		}
+
+		@Override
+		public void setReplica(TargetReplicas.Replica replica) {
+		}
+
+		@Override
+		public TargetReplicas.Replica getReplica() {
+			return null;
+		}
+
+		@Override
+		public boolean isStale() throws IOException {
+			return false;
+		}
+
+		@Override
+		public void startResponse() {
+		}
+
+		@Override
+		public long getResponseLatency() {
+			return -1;
+		}
+
+		@Override
+		public long getFetchTime() {
+			return 0;
+		}
+
+		@Override
+		public long getBytesReceived() {
+			return 0;
+		}
+
+		@Override
+		public long getBytesSent() {
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.rub.nds.tlsattacker.core.constants.AlertDescription;
+import de.rub.nds.tlsattacker.core.constants.AlertLevel;
+import de.rub.nds.tlsattacker.core.constants.ProtocolMessageType;
+import de.rub.nds.tlsattacker.core.protocol.message.AlertMessage;
+import de.rub.nds.tlsattacker.core.protocol.message.CertificateMessage;
+import de.rub.nds.tlsattacker.core.protocol.message.ProtocolMessage;
+import de.rub.nds.tlsattacker.core.protocol.message.ServerHelloDoneMessage;
+import de.rub.nds.tlsattacker.core.protocol.message.ServerHelloMessage;
+
+/**
+ * Building the output string of already parsed messages, with {@link ResponseEncoder} and with the string
+ * concatenation it replaced. Run with -prof gc to compare the allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseEncoderBenchmark {
+	/**
+	 * Responses covering multiple handshake messages and a single alert
+	 */
+	public enum Response {
+		HANDSHAKE, ALERT
+	}
+
+	@Param({ "HANDSHAKE", "ALERT" })
+	Response response;
+
+	private List<ProtocolMessage> messages;
+	private ResponseEncoder encoder;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		messages = new ArrayList<>();
+		if(response == Response.ALERT) {
+			AlertMessage alert = new AlertMessage();
+			alert.setLevel(AlertLevel.FATAL.getValue());
+			alert.setDescription(AlertDescription.HANDSHAKE_FAILURE.getValue());
+			messages.add(alert);
+		} else {
+			messages.add(new ServerHelloMessage());
+			messages.add(new CertificateMessage());
+			messages.add(new ServerHelloDoneMessage());
+		}
+		encoder = new ResponseEncoder();
+	}
+
+	@Benchmark
+	public String encoder() {
+		encoder.clear();
+		for(int i = 0; i < messages.size(); i++) {
+			ProtocolMessage message = messages.get(i);
+			if(message.getProtocolMessageType() == ProtocolMessageType.ALERT) {
+				AlertMessage alert = (AlertMessage) message;
+				encoder.add(ResponseEncoder.getAlertName(alert.getLevel().getValue(), alert.getDescription().getValue()));
+			} else {
+				encoder.add(message.toCompactString());
+			}
+		}
+		encoder.add(TLSAttackerConnector.SYMBOL_CONNECTION_CLOSED);
+		return encoder.encode();
+	}
+
+	/**
+	 * The output string as it was built before {@link ResponseEncoder} was introduced
+	 */
+	@Benchmark
+	public String concatenation() {
+		List<String> receivedMessages = new LinkedList<>();
+		String outputMessage;
+		for(ProtocolMessage message: messages) {
+			if(message.getProtocolMessageType() == ProtocolMessageType.ALERT) {
+				AlertMessage alert = (AlertMessage) message;
+				AlertLevel level = AlertLevel.getAlertLevel(alert.getLevel().getValue());
+				AlertDescription description = AlertDescription.getAlertDescription(alert.getDescription().getValue());
+				outputMessage = "ALERT_" + level.name() + "_";
+				if(description == null) {
+					outputMessage += "UNKNOWN";
+				} else {
+					outputMessage += description.name();
+				}
+			} else {
+				outputMessage = message.toCompactString();
+			}
+			receivedMessages.add(outputMessage);
+		}
+		receivedMessages.add(TLSAttackerConnector.SYMBOL_CONNECTION_CLOSED);
+		return String.join("|", receivedMessages);
+	}
+}
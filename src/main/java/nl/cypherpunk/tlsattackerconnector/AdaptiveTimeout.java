@@ -0,0 +1,213 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Learns how long to wait for the response to an input symbol from the response latencies observed so far. Latencies
+ * are recorded for every input symbol together with the symbols sent before it on the same connection, and for every
+ * input symbol on its own. The time to wait is derived from a high percentile of the latencies with a safety margin.
+ * For a symbol that never got a response, the percentile of the latencies of all responses is used instead.
+ *
+ * The global timeout is used until enough observations are available, and whenever the same sequence of symbols
+ * resulted in a different output, or a response arrived so close to the time waited that it may have been cut short.
+ */
+public class AdaptiveTimeout {
+	// Number of latencies kept for every symbol
+	static final int SAMPLE_COUNT = 64;
+	// Number of latencies kept for every sequence of symbols, as most sequences are only executed a few times
+	static final int PREFIX_SAMPLE_COUNT = 8;
+	// Limit on the number of tracked sequences, after which only the symbols themselves are tracked
+	static final int MAX_PREFIXES = 100000;
+	// A response arriving after this fraction of a reduced timeout may have been cut short
+	static final double LATE_RESPONSE_FRACTION = 0.8;
+
+	private final long timeout;
+	private final long minimum;
+	private final double percentile;
+	private final double margin;
+	private final int minSamples;
+
+	private final HashMap<String, Statistics> prefixes = new HashMap<>();
+	private final HashMap<String, Statistics> symbols = new HashMap<>();
+	private Statistics responses = new Statistics(SAMPLE_COUNT);
+	private long reducedWaits = 0;
+	private long inconsistencies = 0;
+
+	/**
+	 * @param timeout Global timeout in milliseconds, which is never exceeded
+	 * @param minimum Time in milliseconds that is always added to a derived timeout, to absorb occasional delays
+	 * @param percentile Percentile of the observed latencies to use
+	 * @param margin Factor the percentile is multiplied with
+	 * @param minSamples Number of observations needed before the timeout is reduced
+	 */
+	public AdaptiveTimeout(long timeout, long minimum, double percentile, double margin, int minSamples) {
+		this.timeout = timeout;
+		this.minimum = minimum;
+		this.percentile = percentile;
+		this.margin = margin;
+		this.minSamples = minSamples;
+	}
+
+	/**
+	 * Determine how long to wait for the response to an input symbol
+	 *
+	 * @param prefix Input symbols sent before on the same connection
+	 * @param symbol Input symbol that was sent
+	 * @return Time to wait in milliseconds
+	 */
+	public synchronized long getTimeout(List<String> prefix, String symbol) {
+		long result = getTimeout(prefixes.get(getKey(prefix, symbol)));
+		if(result < 0) {
+			result = getTimeout(symbols.get(symbol));
+		}
+		if(result < 0 || result >= timeout) {
+			return timeout;
+		}
+		reducedWaits++;
+		return result;
+	}
+
+	private long getTimeout(Statistics statistics) {
+		if(statistics == null || statistics.observations < minSamples) {
+			return -1;
+		}
+		if(statistics.inconsistent) {
+			return timeout;
+		}
+		if(statistics.size > 0) {
+			return deriveTimeout(statistics);
+		}
+		// The symbol was never answered, so only wait as long as responses in general take
+		if(responses.size >= minSamples) {
+			return deriveTimeout(responses);
+		}
+		return timeout;
+	}
+
+	private long deriveTimeout(Statistics statistics) {
+		long latency = statistics.getPercentile(percentile);
+		return minimum + (long) Math.ceil(latency * margin / 1000.0);
+	}
+
+	/**
+	 * Record the result of waiting for the response to an input symbol
+	 *
+	 * @param prefix Input symbols sent before on the same connection
+	 * @param symbol Input symbol that was sent
+	 * @param waited Time in milliseconds that was waited for the response
+	 * @param latency Time in nanoseconds until the first data was received, or a negative value if nothing arrived
+	 * @param output Output for the input symbol
+	 */
+	public synchronized void record(List<String> prefix, String symbol, long waited, long latency, String output) {
+		String key = getKey(prefix, symbol);
+		Statistics prefixStatistics = prefixes.get(key);
+		if(prefixStatistics == null && prefixes.size() < MAX_PREFIXES) {
+			prefixStatistics = new Statistics(PREFIX_SAMPLE_COUNT);
+			prefixes.put(key, prefixStatistics);
+		}
+		Statistics symbolStatistics = symbols.get(symbol);
+		if(symbolStatistics == null) {
+			symbolStatistics = new Statistics(SAMPLE_COUNT);
+			symbols.put(symbol, symbolStatistics);
+		}
+
+		boolean inconsistent = prefixStatistics != null && prefixStatistics.output != null && !prefixStatistics.output.equals(output);
+		if(waited < timeout && latency >= 0 && latency / 1000000.0 >= waited * LATE_RESPONSE_FRACTION) {
+			inconsistent = true;
+		}
+		if(inconsistent) {
+			if(!symbolStatistics.inconsistent) {
+				inconsistencies++;
+			}
+			symbolStatistics.inconsistent = true;
+			if(prefixStatistics != null) {
+				prefixStatistics.inconsistent = true;
+			}
+		}
+
+		if(prefixStatistics != null) {
+			prefixStatistics.add(latency, output);
+		}
+		symbolStatistics.add(latency, output);
+		if(latency >= 0) {
+			responses.add(latency, null);
+		}
+	}
+
+	/**
+	 * Forget all observations, for example after a warm-up against a different target
+	 */
+	public synchronized void reset() {
+		prefixes.clear();
+		symbols.clear();
+		responses = new Statistics(SAMPLE_COUNT);
+		reducedWaits = 0;
+		inconsistencies = 0;
+	}
+
+	private static String getKey(List<String> prefix, String symbol) {
+		if(prefix.isEmpty()) {
+			return symbol;
+		}
+		return String.join(TLSAttackerConnector.WORD_DELIMITER, prefix) + TLSAttackerConnector.WORD_DELIMITER + symbol;
+	}
+
+	/**
+	 * @return A summary of the timeouts that are currently used for every input symbol
+	 */
+	public synchronized String getStatistics() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format("Adaptive timeout: %d reduced waits, %d symbols falling back to the global timeout of %d ms", reducedWaits, inconsistencies, timeout));
+
+		Map<String, Statistics> sorted = new TreeMap<>(symbols);
+		for(Map.Entry<String, Statistics> entry: sorted.entrySet()) {
+			long symbolTimeout = getTimeout(entry.getValue());
+			builder.append(String.format("%n  %s: %d observations, %d responses, %s", entry.getKey(), entry.getValue().observations,
+					entry.getValue().responses, symbolTimeout < 0 || symbolTimeout >= timeout ? timeout + " ms (global)" : symbolTimeout + " ms"));
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Latencies and outputs observed for an input symbol
+	 */
+	private static class Statistics {
+		// Most recent latencies of responses in microseconds
+		final long[] samples;
+		int size = 0;
+		int next = 0;
+		long observations = 0;
+		long responses = 0;
+		String output;
+		boolean inconsistent = false;
+
+		Statistics(int capacity) {
+			samples = new long[capacity];
+		}
+
+		void add(long latency, String output) {
+			observations++;
+			this.output = output;
+			if(latency < 0) {
+				return;
+			}
+			responses++;
+			samples[next] = latency / 1000;
+			next = (next + 1) % samples.length;
+			if(size < samples.length) {
+				size++;
+			}
+		}
+
+		long getPercentile(double percentile) {
+			long[] sorted = Arrays.copyOf(samples, size);
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+			return sorted[Math.max(0, Math.min(size - 1, index))];
+		}
+	}
+}
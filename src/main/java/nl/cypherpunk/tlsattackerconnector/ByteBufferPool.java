@@ -0,0 +1,65 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Pool of equally sized buffers, so reading from the network does not allocate new buffers for every response
+ */
+public class ByteBufferPool {
+	static final int DEFAULT_BUFFER_SIZE = 16384;
+	// Limit the number of idle buffers that are kept around
+	static final int DEFAULT_MAX_IDLE = 64;
+
+	private static final ByteBufferPool heapPool = new ByteBufferPool(DEFAULT_BUFFER_SIZE, false, DEFAULT_MAX_IDLE);
+	private static final ByteBufferPool directPool = new ByteBufferPool(DEFAULT_BUFFER_SIZE, true, DEFAULT_MAX_IDLE);
+
+	private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+	private final int bufferSize;
+	private final boolean direct;
+	private final int maxIdle;
+
+	public ByteBufferPool(int bufferSize, boolean direct, int maxIdle) {
+		this.bufferSize = bufferSize;
+		this.direct = direct;
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * @param direct Whether the pool should contain direct buffers
+	 * @return The shared pool with the default buffer size
+	 */
+	public static ByteBufferPool getShared(boolean direct) {
+		return direct ? directPool : heapPool;
+	}
+
+	/**
+	 * @return A cleared buffer, which should be returned using {@link #release(ByteBuffer)} when it is no longer used
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buffer = buffers.poll();
+		if(buffer == null) {
+			buffer = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+		}
+		return buffer;
+	}
+
+	/**
+	 * @param buffer Buffer previously obtained from {@link #acquire()}
+	 */
+	public void release(ByteBuffer buffer) {
+		// The size check is not exact under concurrent use, which is fine for a soft limit
+		if(buffers.size() < maxIdle) {
+			buffer.clear();
+			buffers.offer(buffer);
+		}
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public boolean isDirect() {
+		return direct;
+	}
+}
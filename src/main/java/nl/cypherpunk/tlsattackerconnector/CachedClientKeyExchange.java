@@ -0,0 +1,315 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import javax.xml.bind.annotation.XmlTransient;
+
+import org.bouncycastle.util.BigIntegers;
+
+import de.rub.nds.modifiablevariable.util.ArrayConverter;
+import de.rub.nds.tlsattacker.core.constants.HandshakeByteLength;
+import de.rub.nds.tlsattacker.core.constants.NamedGroup;
+import de.rub.nds.tlsattacker.core.crypto.ec.CurveFactory;
+import de.rub.nds.tlsattacker.core.crypto.ec.EllipticCurve;
+import de.rub.nds.tlsattacker.core.crypto.ec.Point;
+import de.rub.nds.tlsattacker.core.crypto.ec.PointFormatter;
+import de.rub.nds.tlsattacker.core.protocol.handler.DHClientKeyExchangeHandler;
+import de.rub.nds.tlsattacker.core.protocol.handler.ECDHClientKeyExchangeHandler;
+import de.rub.nds.tlsattacker.core.protocol.handler.ProtocolMessageHandler;
+import de.rub.nds.tlsattacker.core.protocol.handler.RSAClientKeyExchangeHandler;
+import de.rub.nds.tlsattacker.core.protocol.message.DHClientKeyExchangeMessage;
+import de.rub.nds.tlsattacker.core.protocol.message.ECDHClientKeyExchangeMessage;
+import de.rub.nds.tlsattacker.core.protocol.message.ProtocolMessage;
+import de.rub.nds.tlsattacker.core.protocol.message.RSAClientKeyExchangeMessage;
+import de.rub.nds.tlsattacker.core.protocol.preparator.DHClientKeyExchangePreparator;
+import de.rub.nds.tlsattacker.core.protocol.preparator.ECDHClientKeyExchangePreparator;
+import de.rub.nds.tlsattacker.core.protocol.preparator.RSAClientKeyExchangePreparator;
+import de.rub.nds.tlsattacker.core.state.TlsContext;
+import de.rub.nds.tlsattacker.core.workflow.chooser.Chooser;
+
+/**
+ * ClientKeyExchange messages that are prepared using a {@link KeyExchangeCache}. The messages and their preparators
+ * extend the ones of TLS-Attacker and only replace the public key operations, so all other preparation steps and
+ * modifications of the messages still apply.
+ */
+public class CachedClientKeyExchange {
+	/**
+	 * Get a version of a message that uses the cache
+	 *
+	 * @param message Message loaded from a trace
+	 * @param cache Cache to use
+	 * @return A copy of the message using the cache, or the message itself if it is not an RSA, DH or ECDH
+	 *         ClientKeyExchange message
+	 */
+	public static ProtocolMessage wrap(ProtocolMessage message, KeyExchangeCache cache) {
+		ProtocolMessage wrapped;
+		if(message.getClass() == RSAClientKeyExchangeMessage.class) {
+			wrapped = new RSAMessage(cache);
+		} else if(message.getClass() == DHClientKeyExchangeMessage.class) {
+			wrapped = new DHMessage(cache);
+		} else if(message.getClass() == ECDHClientKeyExchangeMessage.class) {
+			wrapped = new ECDHMessage(cache);
+		} else {
+			return message;
+		}
+		copyFields(message, wrapped);
+		return wrapped;
+	}
+
+	/**
+	 * Copy all fields of a message to an instance of a subclass, so the subclass keeps the loaded values and
+	 * modifications
+	 */
+	private static void copyFields(Object source, Object target) {
+		for(Class<?> type = source.getClass(); type != null; type = type.getSuperclass()) {
+			for(Field field: type.getDeclaredFields()) {
+				if(Modifier.isStatic(field.getModifiers())) {
+					continue;
+				}
+				field.setAccessible(true);
+				try {
+					field.set(target, field.get(source));
+				} catch(IllegalAccessException e) {
+					throw new IllegalStateException("Unable to copy field " + field.getName() + " of " + type.getSimpleName(), e);
+				}
+			}
+		}
+	}
+
+	static class RSAMessage extends RSAClientKeyExchangeMessage {
+		private static final long serialVersionUID = 1L;
+
+		@XmlTransient
+		private final KeyExchangeCache cache;
+
+		RSAMessage(KeyExchangeCache cache) {
+			this.cache = cache;
+		}
+
+		@Override
+		public ProtocolMessageHandler<RSAClientKeyExchangeMessage> getHandler(TlsContext context) {
+			return new RSAClientKeyExchangeHandler(context) {
+				@Override
+				public RSAClientKeyExchangePreparator<RSAClientKeyExchangeMessage> getPreparator(RSAClientKeyExchangeMessage message) {
+					return new RSAPreparator(context.getChooser(), message, cache);
+				}
+			};
+		}
+	}
+
+	static class DHMessage extends DHClientKeyExchangeMessage {
+		private static final long serialVersionUID = 1L;
+
+		@XmlTransient
+		private final KeyExchangeCache cache;
+
+		DHMessage(KeyExchangeCache cache) {
+			this.cache = cache;
+		}
+
+		@Override
+		public ProtocolMessageHandler<DHClientKeyExchangeMessage> getHandler(TlsContext context) {
+			return new DHClientKeyExchangeHandler(context) {
+				@Override
+				public DHClientKeyExchangePreparator<DHClientKeyExchangeMessage> getPreparator(DHClientKeyExchangeMessage message) {
+					return new DHPreparator(context.getChooser(), message, cache);
+				}
+			};
+		}
+	}
+
+	static class ECDHMessage extends ECDHClientKeyExchangeMessage {
+		private static final long serialVersionUID = 1L;
+
+		@XmlTransient
+		private final KeyExchangeCache cache;
+
+		ECDHMessage(KeyExchangeCache cache) {
+			this.cache = cache;
+		}
+
+		@Override
+		public ProtocolMessageHandler<ECDHClientKeyExchangeMessage> getHandler(TlsContext context) {
+			return new ECDHClientKeyExchangeHandler(context) {
+				@Override
+				public ECDHClientKeyExchangePreparator<ECDHClientKeyExchangeMessage> getPreparator(ECDHClientKeyExchangeMessage message) {
+					return new ECDHPreparator(context.getChooser(), message, cache);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Encrypts the premaster secret using the cache. This follows the client side of
+	 * {@link RSAClientKeyExchangePreparator#prepareAfterParse(boolean)}, drawing the padding and premaster secret from
+	 * the random generator of the context in the same order unless fresh randomness is used.
+	 */
+	static class RSAPreparator extends RSAClientKeyExchangePreparator<RSAClientKeyExchangeMessage> {
+		private final KeyExchangeCache cache;
+
+		RSAPreparator(Chooser chooser, RSAClientKeyExchangeMessage message, KeyExchangeCache cache) {
+			super(chooser, message);
+			this.cache = cache;
+		}
+
+		@Override
+		public void prepareAfterParse(boolean clientMode) {
+			if(!clientMode || (msg.getPublicKey() != null && msg.getPublicKey().getValue() != null)) {
+				super.prepareAfterParse(clientMode);
+				return;
+			}
+			msg.prepareComputations();
+			prepareClientServerRandom(msg);
+
+			BigInteger modulus = chooser.getServerRsaModulus().abs();
+			BigInteger exponent = chooser.getServerRSAPublicKey().abs();
+			int keyLength = chooser.getServerRsaModulus().bitLength() / 8;
+			byte[] version = chooser.getHighestClientProtocolVersion().getValue();
+			// A premaster secret that is already set in the context is reused by TLS-Attacker, so it cannot be fresh
+			KeyExchangeCache.RsaPremasterSecret fresh = null;
+			if(cache.isFresh() && chooser.getContext().getPreMasterSecret() == null) {
+				fresh = cache.takeRsaPremasterSecret(modulus, exponent, version);
+			}
+
+			int paddingLength = keyLength - HandshakeByteLength.PREMASTER_SECRET - 3;
+			if(fresh != null) {
+				padding = fresh.padding;
+			} else if(paddingLength > 0) {
+				padding = new byte[paddingLength];
+				chooser.getContext().getRandom().nextBytes(padding);
+				ArrayConverter.makeArrayNonZero(padding);
+			} else {
+				padding = new byte[0];
+			}
+			preparePadding(msg);
+
+			if(fresh != null) {
+				msg.getComputations().setPremasterSecretProtocolVersion(version);
+				premasterSecret = fresh.premasterSecret;
+			} else {
+				premasterSecret = generatePremasterSecret();
+			}
+			preparePremasterSecret(msg);
+			preparePlainPaddedPremasterSecret(msg);
+
+			byte[] plain = msg.getComputations().getPlainPaddedPremasterSecret().getValue();
+			if(plain.length == 0) {
+				plain = new byte[] { 0x00 };
+			}
+			if(fresh != null && Arrays.equals(plain, fresh.plain)) {
+				encrypted = fresh.encrypted;
+			} else {
+				BigInteger result = cache.modPow(new BigInteger(1, plain), exponent, modulus);
+				encrypted = ArrayConverter.bigIntegerToByteArray(result, keyLength, true);
+			}
+			prepareSerializedPublicKey(msg);
+			premasterSecret = manipulatePremasterSecret(premasterSecret);
+			preparePremasterSecret(msg);
+		}
+	}
+
+	/**
+	 * Computes the client public key and the shared secret using the cache
+	 */
+	static class DHPreparator extends DHClientKeyExchangePreparator<DHClientKeyExchangeMessage> {
+		private final KeyExchangeCache cache;
+		// Fresh key pair taken for this message, null if the configured private key is used
+		private BigInteger[] keyPair;
+
+		DHPreparator(Chooser chooser, DHClientKeyExchangeMessage message, KeyExchangeCache cache) {
+			super(chooser, message);
+			this.cache = cache;
+		}
+
+		@Override
+		protected void setComputationPrivateKey(DHClientKeyExchangeMessage message, boolean clientMode) {
+			if(!clientMode || !cache.isFresh()) {
+				super.setComputationPrivateKey(message, clientMode);
+				return;
+			}
+			keyPair = cache.takeDhKeyPair(message.getComputations().getGenerator().getValue(), message.getComputations().getModulus().getValue());
+			message.getComputations().setPrivateKey(keyPair[0]);
+		}
+
+		@Override
+		protected BigInteger calculatePublicKey(BigInteger generator, BigInteger modulus, BigInteger privateKey) {
+			if(modulus.signum() == 0) {
+				return super.calculatePublicKey(generator, modulus, privateKey);
+			}
+			if(keyPair != null && keyPair[0].equals(privateKey)) {
+				return keyPair[1];
+			}
+			return cache.modPow(generator, privateKey.abs(), modulus.abs());
+		}
+
+		@Override
+		protected byte[] calculatePremasterSecret(BigInteger modulus, BigInteger privateKey, BigInteger publicKey) {
+			if(modulus.signum() == 0) {
+				return super.calculatePremasterSecret(modulus, privateKey, publicKey);
+			}
+			return BigIntegers.asUnsignedByteArray(cache.modPow(publicKey, privateKey.abs(), modulus.abs()));
+		}
+	}
+
+	/**
+	 * Computes the client public key and the shared secret using the cache. The curves of RFC 7748 are left to
+	 * TLS-Attacker, as they do not use point multiplication on the curve.
+	 */
+	static class ECDHPreparator extends ECDHClientKeyExchangePreparator<ECDHClientKeyExchangeMessage> {
+		private final KeyExchangeCache cache;
+		// Fresh key pair taken for this message, null if the configured private key is used
+		private KeyExchangeCache.EcKeyPair keyPair;
+
+		ECDHPreparator(Chooser chooser, ECDHClientKeyExchangeMessage message, KeyExchangeCache cache) {
+			super(chooser, message);
+			this.cache = cache;
+		}
+
+		@Override
+		public void prepareHandshakeMessageContents() {
+			NamedGroup group = chooser.getSelectedNamedGroup();
+			if(group == NamedGroup.ECDH_X25519 || group == NamedGroup.ECDH_X448) {
+				super.prepareHandshakeMessageContents();
+				return;
+			}
+			msg.prepareComputations();
+
+			setComputationPrivateKey(msg, true);
+			EllipticCurve curve = CurveFactory.getCurve(group);
+			BigInteger privateKey = msg.getComputations().getPrivateKey().getValue();
+			Point publicKey;
+			if(keyPair != null && keyPair.privateKey.equals(privateKey)) {
+				publicKey = keyPair.publicKey;
+			} else {
+				publicKey = cache.multiply(group, curve, privateKey, curve.getBasePoint());
+			}
+			msg.getComputations().setPublicKeyX(publicKey.getX().getData());
+			msg.getComputations().setPublicKeyY(publicKey.getY().getData());
+			publicKey = curve.getPoint(msg.getComputations().getPublicKeyX().getValue(), msg.getComputations().getPublicKeyY().getValue());
+			msg.setPublicKey(PointFormatter.formatToByteArray(group, publicKey, chooser.getConfig().getDefaultSelectedPointFormat()));
+
+			prepareSerializedPublicKeyLength(msg);
+			prepareAfterParse(true);
+		}
+
+		@Override
+		protected void setComputationPrivateKey(ECDHClientKeyExchangeMessage message, boolean clientMode) {
+			if(!clientMode || !cache.isFresh()) {
+				super.setComputationPrivateKey(message, clientMode);
+				return;
+			}
+			keyPair = cache.takeEcKeyPair(chooser.getSelectedNamedGroup());
+			message.getComputations().setPrivateKey(keyPair.privateKey);
+		}
+
+		@Override
+		protected byte[] computePremasterSecret(EllipticCurve curve, Point publicKey, BigInteger privateKey) {
+			Point sharedPoint = cache.multiply(chooser.getSelectedNamedGroup(), curve, privateKey, publicKey);
+			int length = ArrayConverter.bigIntegerToByteArray(sharedPoint.getX().getModulus()).length;
+			return ArrayConverter.bigIntegerToNullPaddedByteArray(sharedPoint.getX().getData(), length);
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import de.rub.nds.tlsattacker.core.config.Config;
+import de.rub.nds.tlsattacker.core.constants.AlgorithmResolver;
+import de.rub.nds.tlsattacker.core.constants.CipherSuite;
+import de.rub.nds.tlsattacker.core.constants.ProtocolVersion;
+
+/**
+ * Determines which cipher suites are supported by the server by sending a ClientHello offering a single cipher
+ * suite. Cipher suites are checked concurrently by a number of workers, each with its own session and copy of the
+ * configuration. The sessions are prepared before the scan starts, so copying the configuration and parsing the
+ * ClientHello does not take processor time from the workers that are waiting for a response.
+ */
+public class CipherSuiteScanner {
+	static String SYMBOL_CLIENT_HELLO = "ClientHello";
+	static String MESSAGE_SERVER_HELLO = "SERVER_HELLO";
+
+	private final TLSAttackerConnector connector;
+	private final int threads;
+
+	/**
+	 * @param connector Connector providing the configuration and the ClientHello message
+	 * @param threads Maximum number of cipher suites that are checked at the same time
+	 */
+	public CipherSuiteScanner(TLSAttackerConnector connector, int threads) {
+		this.connector = connector;
+		this.threads = threads;
+	}
+
+	/**
+	 * Check all provided cipher suites
+	 *
+	 * @param cipherSuites Cipher suites to check
+	 * @return The results in the same order as the provided cipher suites
+	 * @throws Exception
+	 */
+	public List<Result> scan(List<CipherSuite> cipherSuites) throws Exception {
+		ProtocolVersion protocolVersion = connector.config.getHighestProtocolVersion();
+		ExecutorService executor = ConnectorExecutors.create(connector.executorType, threads, "scan");
+		// Every check takes a session, so this also limits the number of concurrent connections for virtual threads
+		final BlockingQueue<ConnectorSession> sessions = new LinkedBlockingQueue<>();
+		for(int i = 0; i < threads; i++) {
+			sessions.add(createSession());
+		}
+
+		try {
+			List<Future<Result>> futures = new ArrayList<>();
+			List<Result> results = new ArrayList<>();
+
+			for(final CipherSuite cipherSuite: cipherSuites) {
+				if(!isBuildable(cipherSuite, protocolVersion)) {
+					results.add(new Result(cipherSuite, Status.UNSUPPORTED, null, 0));
+					futures.add(null);
+					continue;
+				}
+
+				results.add(null);
+				futures.add(executor.submit(() -> {
+					ConnectorSession session = sessions.take();
+					try {
+						return check(session, cipherSuite);
+					} finally {
+						sessions.add(session);
+					}
+				}));
+			}
+
+			for(int i = 0; i < futures.size(); i++) {
+				if(futures.get(i) != null) {
+					results.set(i, futures.get(i).get());
+				}
+			}
+			return results;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Check whether TLS-Attacker can handle a cipher suite at all, so no connection is needed for the cipher suites
+	 * it cannot build
+	 *
+	 * @param cipherSuite Cipher suite to check
+	 * @param protocolVersion Protocol version that is used
+	 * @return True if TLS-Attacker can handle the cipher suite
+	 */
+	static boolean isBuildable(CipherSuite cipherSuite, ProtocolVersion protocolVersion) {
+		if(!cipherSuite.isRealCipherSuite()) {
+			return false;
+		}
+		try {
+			AlgorithmResolver.getKeyExchangeAlgorithm(cipherSuite);
+			AlgorithmResolver.getCipher(cipherSuite);
+			AlgorithmResolver.getMacAlgorithm(protocolVersion, cipherSuite);
+			AlgorithmResolver.getPRFAlgorithm(protocolVersion, cipherSuite);
+			return true;
+		} catch(java.lang.UnsupportedOperationException | java.lang.IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Create a session for a worker with its own copy of the configuration and a compiled ClientHello
+	 *
+	 * @return The session, which is not connected yet
+	 * @throws IOException If the ClientHello cannot be parsed
+	 */
+	protected ConnectorSession createSession() throws IOException {
+		ConnectorSession session = new ConnectorSession(connector, connector.config.createCopy());
+		session.updateMessages();
+		if(session.getSymbol(SYMBOL_CLIENT_HELLO) == null) {
+			throw new IOException("No " + SYMBOL_CLIENT_HELLO + " message loaded");
+		}
+		return session;
+	}
+
+	/**
+	 * Offer a single cipher suite to the server
+	 *
+	 * @param session Session of the worker, which is not connected
+	 * @param cipherSuite Cipher suite to offer
+	 * @return The result of the check
+	 */
+	protected Result check(ConnectorSession session, CipherSuite cipherSuite) {
+		List<CipherSuite> cipherSuites = new ArrayList<>();
+		cipherSuites.add(cipherSuite);
+
+		// Every connection creates a new context from the configuration, so the configuration can be changed in between
+		Config config = session.getConfig();
+		config.setDefaultSelectedCipherSuite(cipherSuite);
+		config.setDefaultClientSupportedCiphersuites(cipherSuites);
+
+		long start = System.nanoTime();
+		boolean connected = false;
+		try {
+			session.initialiseSession();
+			connected = true;
+			String response = session.processInput(SYMBOL_CLIENT_HELLO);
+			long latency = System.nanoTime() - start;
+
+			Status status = response.contains(MESSAGE_SERVER_HELLO) ? Status.SUPPORTED : Status.NOT_SUPPORTED;
+			return new Result(cipherSuite, status, response, latency);
+		} catch(java.lang.UnsupportedOperationException | java.lang.IllegalArgumentException e) {
+			return new Result(cipherSuite, Status.UNSUPPORTED, null, System.nanoTime() - start);
+		} catch(Exception e) {
+			return new Result(cipherSuite, Status.ERROR, e.getMessage(), System.nanoTime() - start);
+		} finally {
+			if(connected) {
+				try {
+					session.shutdown();
+				} catch(IOException e) {
+					// Connection was already closed
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write the results as a JSON array, with one object per cipher suite
+	 *
+	 * @param results Results of a scan
+	 * @param out Writer to write the report to
+	 */
+	public static void writeReport(List<Result> results, PrintWriter out) {
+		out.println("[");
+		for(int i = 0; i < results.size(); i++) {
+			Result result = results.get(i);
+			out.print(String.format("  {\"cipherSuite\": \"%s\", \"value\": \"0x%04X\", \"status\": \"%s\", \"response\": %s, \"latencyMs\": %.3f}",
+					result.cipherSuite.name(), result.cipherSuite.getValue(), result.status.name(),
+					result.response == null ? "null" : "\"" + escape(result.response) + "\"", result.latency / 1e6));
+			out.println(i < results.size() - 1 ? "," : "");
+		}
+		out.println("]");
+		out.flush();
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	/**
+	 * Outcome of checking a cipher suite
+	 */
+	public enum Status {
+		/** The server selected the cipher suite */
+		SUPPORTED,
+		/** The server did not respond with a ServerHello */
+		NOT_SUPPORTED,
+		/** TLS-Attacker cannot use the cipher suite */
+		UNSUPPORTED,
+		/** The check could not be performed, for example because the server could not be reached */
+		ERROR
+	}
+
+	/**
+	 * Result of checking a single cipher suite
+	 */
+	public static class Result {
+		final CipherSuite cipherSuite;
+		final Status status;
+		final String response;
+		// Time in nanoseconds from connecting until the response was received
+		final long latency;
+
+		Result(CipherSuite cipherSuite, Status status, String response, long latency) {
+			this.cipherSuite = cipherSuite;
+			this.status = status;
+			this.response = response;
+			this.latency = latency;
+		}
+
+		public CipherSuite getCipherSuite() {
+			return cipherSuite;
+		}
+
+		public Status getStatus() {
+			return status;
+		}
+
+		public String getResponse() {
+			return response;
+		}
+
+		public long getLatency() {
+			return latency;
+		}
+	}
+}
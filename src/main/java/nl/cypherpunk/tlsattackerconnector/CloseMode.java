@@ -0,0 +1,16 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+/**
+ * How connections to the target are closed
+ */
+public enum CloseMode {
+	/**
+	 * Close the connection with a FIN, after which the local port stays in TIME_WAIT for a while
+	 */
+	NORMAL,
+	/**
+	 * Close the connection with a RST by setting SO_LINGER to 0, so the local port can be used again immediately. Data
+	 * that was not sent yet is discarded.
+	 */
+	ABORT
+}
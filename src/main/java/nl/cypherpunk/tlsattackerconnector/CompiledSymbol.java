@@ -0,0 +1,59 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.rub.nds.tlsattacker.core.exceptions.WorkflowExecutionException;
+import de.rub.nds.tlsattacker.core.state.State;
+import de.rub.nds.tlsattacker.core.workflow.WorkflowTrace;
+import de.rub.nds.tlsattacker.core.workflow.action.TlsAction;
+
+/**
+ * Input symbol prepared for repeated execution. The actions of the trace are normalized once when the symbol is
+ * compiled, and only reset after every execution. A compiled symbol modifies its actions when it is executed, so it
+ * should only be used by a single session.
+ */
+public class CompiledSymbol {
+	private final String name;
+	private final List<TlsAction> actions;
+	
+	/**
+	 * @param name Name of the input symbol
+	 * @param trace Trace containing the actions to execute, which should not be used elsewhere
+	 */
+	public CompiledSymbol(String name, WorkflowTrace trace) {
+		this.name = name;
+		this.actions = new ArrayList<>(trace.getTlsActions());
+		
+		// Need to normalize otherwise an exception is thrown about no connection existing with alias 'null'
+		for(TlsAction action: actions) {
+			action.normalize();
+		}
+	}
+	
+	/**
+	 * Execute the actions of this symbol
+	 * 
+	 * @param state State of the session to execute the actions for
+	 * @throws IOException If an action could not be executed
+	 */
+	public void execute(State state) throws IOException {
+		try {
+			for(TlsAction action: actions) {
+				action.execute(state);
+			}
+		} catch(WorkflowExecutionException e) {
+			throw new IOException("Could not execute " + name + ": " + e.getMessage(), e);
+		} finally {
+			// Reset actions so we can execute them again
+			for(TlsAction action: actions) {
+				action.reset();
+			}
+		}
+	}
+	
+	public String getName() {
+		return name;
+	}
+}
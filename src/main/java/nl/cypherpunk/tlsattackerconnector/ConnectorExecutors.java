@@ -0,0 +1,74 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the thread pools used to run concurrent sessions
+ */
+public class ConnectorExecutors {
+	/**
+	 * Create a thread pool of the requested type. Virtual threads are only available on Java 21 and later, so they
+	 * are looked up reflectively and a cached pool is used when they are not supported.
+	 * 
+	 * @param type Type of thread pool
+	 * @param threads Number of threads for a fixed pool
+	 * @param name Prefix for the names of platform threads
+	 * @return The thread pool
+	 */
+	public static ExecutorService create(ExecutorType type, int threads, String name) {
+		ThreadFactory threadFactory = new NamedThreadFactory(name);
+		
+		switch(type) {
+		case VIRTUAL:
+			ExecutorService virtualExecutor = createVirtualThreadExecutor();
+			if(virtualExecutor != null) {
+				return virtualExecutor;
+			}
+			System.out.println("Virtual threads are not supported by this JVM, using platform threads instead");
+			return Executors.newCachedThreadPool(threadFactory);
+		case CACHED:
+			return Executors.newCachedThreadPool(threadFactory);
+		default:
+			return Executors.newFixedThreadPool(threads, threadFactory);
+		}
+	}
+	
+	/**
+	 * Create a single daemon thread for running periodic tasks
+	 * 
+	 * @param name Name of the thread
+	 * @return The scheduler
+	 */
+	public static ScheduledExecutorService createScheduled(String name) {
+		return Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory(name));
+	}
+	
+	private static ExecutorService createVirtualThreadExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch(ReflectiveOperationException e) {
+			return null;
+		}
+	}
+	
+	private static class NamedThreadFactory implements ThreadFactory {
+		private final AtomicInteger counter = new AtomicInteger();
+		private final String name;
+		
+		NamedThreadFactory(String name) {
+			this.name = name;
+		}
+		
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
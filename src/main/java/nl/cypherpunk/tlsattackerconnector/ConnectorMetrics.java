@@ -0,0 +1,304 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics shared by all sessions of the connector. It tracks the time spent in every phase of processing a query,
+ * the time spent per input symbol, the bytes sent and received, and the statistics of the query cache and session
+ * pools. The metrics can be written in the Prometheus text format, or summarised in a single line.
+ */
+public class ConnectorMetrics {
+	// Histogram of all input symbols that are neither a loaded message nor RESET
+	static final String UNKNOWN_SYMBOL = "unknown";
+
+	/**
+	 * Phases of processing an input symbol
+	 */
+	public enum Phase {
+		/** Setting up a connection with the target */
+		CONNECT,
+		/** Closing the current connection and setting up a new session */
+		RESET,
+		/** Preparing and sending the messages of an input symbol */
+		SEND,
+		/** Waiting for data from the target */
+		WAIT,
+		/** Parsing the received data, excluding the time waiting for it */
+		PARSE,
+		/** Processing a complete input symbol, as seen by the learner */
+		QUERY
+	}
+
+	private final TLSAttackerConnector connector;
+	private final long started = System.nanoTime();
+	private final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+	private final ConcurrentHashMap<String, LatencyHistogram> symbols = new ConcurrentHashMap<>();
+	private final Set<SessionPool> sessionPools = ConcurrentHashMap.newKeySet();
+	// Statistics of session pools that were already closed
+	private final long[] closedSessionPools = new long[4];
+
+	private final AtomicLong bytesIn = new AtomicLong();
+	private final AtomicLong bytesOut = new AtomicLong();
+
+	// Values at the time of the last summary, to report rates
+	private long lastSummary = started;
+	private long lastQueries = 0;
+	private long lastResets = 0;
+
+	/**
+	 * @param connector Connector providing the query cache
+	 */
+	public ConnectorMetrics(TLSAttackerConnector connector) {
+		this.connector = connector;
+		for(int i = 0; i < phases.length; i++) {
+			phases[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * @param phase Phase that was completed
+	 * @param nanos Time spent in the phase in nanoseconds
+	 */
+	public void record(Phase phase, long nanos) {
+		phases[phase.ordinal()].record(nanos);
+	}
+
+	/**
+	 * @param symbol Input symbol that was processed, which is recorded as unknown if no message with this name is loaded
+	 * @param nanos Time spent processing the input symbol in nanoseconds
+	 */
+	public void recordSymbol(String symbol, long nanos) {
+		// Learners can send any symbol, so only known symbols get their own histogram
+		if(!symbol.equals(TLSAttackerConnector.SYMBOL_RESET) && !connector.loadedMessages.containsKey(symbol)) {
+			symbol = UNKNOWN_SYMBOL;
+		}
+		LatencyHistogram histogram = symbols.get(symbol);
+		if(histogram == null) {
+			histogram = symbols.computeIfAbsent(symbol, s -> new LatencyHistogram());
+		}
+		histogram.record(nanos);
+		record(Phase.QUERY, nanos);
+	}
+
+	public void addBytesIn(long bytes) {
+		bytesIn.addAndGet(bytes);
+	}
+
+	public void addBytesOut(long bytes) {
+		bytesOut.addAndGet(bytes);
+	}
+
+	/**
+	 * Include the statistics of a session pool until it is closed
+	 *
+	 * @param sessionPool Session pool to include
+	 */
+	public void addSessionPool(SessionPool sessionPool) {
+		sessionPools.add(sessionPool);
+	}
+
+	/**
+	 * Stop tracking a session pool, keeping its statistics in the totals
+	 *
+	 * @param sessionPool Session pool that was closed
+	 */
+	public synchronized void removeSessionPool(SessionPool sessionPool) {
+		if(sessionPools.remove(sessionPool)) {
+			closedSessionPools[0] += sessionPool.getHits();
+			closedSessionPools[1] += sessionPool.getMisses();
+			closedSessionPools[2] += sessionPool.getStale();
+			closedSessionPools[3] += sessionPool.getFailures();
+		}
+	}
+
+	/**
+	 * Discard all metrics recorded so far, for example after a warm-up. Session pools that are still open stay
+	 * included.
+	 */
+	public synchronized void reset() {
+		for(LatencyHistogram phase: phases) {
+			phase.reset();
+		}
+		symbols.clear();
+		Arrays.fill(closedSessionPools, 0);
+		bytesIn.set(0);
+		bytesOut.set(0);
+		lastSummary = System.nanoTime();
+		lastQueries = 0;
+		lastResets = 0;
+	}
+
+	public LatencyHistogram getHistogram(Phase phase) {
+		return phases[phase.ordinal()];
+	}
+
+	/**
+	 * Write all metrics in the Prometheus text format
+	 *
+	 * @param out Builder to write the metrics to
+	 */
+	public void writePrometheus(StringBuilder out) {
+		out.append("# TYPE tlsconnector_uptime_seconds gauge\n");
+		out.append("tlsconnector_uptime_seconds ").append(seconds(System.nanoTime() - started)).append('\n');
+		out.append("# TYPE tlsconnector_bytes_received_total counter\n");
+		out.append("tlsconnector_bytes_received_total ").append(bytesIn.get()).append('\n');
+		out.append("# TYPE tlsconnector_bytes_sent_total counter\n");
+		out.append("tlsconnector_bytes_sent_total ").append(bytesOut.get()).append('\n');
+
+		out.append("# TYPE tlsconnector_phase_seconds histogram\n");
+		for(Phase phase: Phase.values()) {
+			writeHistogram(out, "tlsconnector_phase_seconds", "phase=\"" + phase.name().toLowerCase() + "\"", phases[phase.ordinal()]);
+		}
+		out.append("# TYPE tlsconnector_symbol_seconds histogram\n");
+		for(Map.Entry<String, LatencyHistogram> entry: new TreeMap<>(symbols).entrySet()) {
+			writeHistogram(out, "tlsconnector_symbol_seconds", "symbol=\"" + escape(entry.getKey()) + "\"", entry.getValue());
+		}
+
+		QueryCache queryCache = connector.queryCache;
+		if(queryCache != null) {
+			out.append("# TYPE tlsconnector_query_cache_hits_total counter\n");
+			out.append("tlsconnector_query_cache_hits_total ").append(queryCache.getHits()).append('\n');
+			out.append("# TYPE tlsconnector_query_cache_misses_total counter\n");
+			out.append("tlsconnector_query_cache_misses_total ").append(queryCache.getMisses()).append('\n');
+			out.append("# TYPE tlsconnector_query_cache_entries gauge\n");
+			out.append("tlsconnector_query_cache_entries ").append(queryCache.getEntryCount()).append('\n');
+		}
+
+		SocketSettings socketSettings = connector.socketSettings;
+		out.append("# TYPE tlsconnector_connections_total counter\n");
+		out.append("tlsconnector_connections_total ").append(socketSettings.getConnections()).append('\n');
+		out.append("# TYPE tlsconnector_local_ports_skipped_total counter\n");
+		out.append("tlsconnector_local_ports_skipped_total ").append(socketSettings.getPortsInUse()).append('\n');
+		out.append("# TYPE tlsconnector_local_ports_exhausted_total counter\n");
+		out.append("tlsconnector_local_ports_exhausted_total ").append(socketSettings.getExhausted()).append('\n');
+		out.append("# TYPE tlsconnector_connect_failures_total counter\n");
+		out.append("tlsconnector_connect_failures_total ").append(socketSettings.getFailures()).append('\n');
+
+		TargetReplicas replicas = connector.replicas;
+		if(replicas != null) {
+			out.append("# TYPE tlsconnector_replica_healthy gauge\n");
+			for(TargetReplicas.Replica replica: replicas.getReplicas()) {
+				out.append("tlsconnector_replica_healthy{replica=\"").append(escape(replica.toString())).append("\"} ").append(replica.isHealthy() ? 1 : 0).append('\n');
+			}
+			out.append("# TYPE tlsconnector_replica_sessions gauge\n");
+			for(TargetReplicas.Replica replica: replicas.getReplicas()) {
+				out.append("tlsconnector_replica_sessions{replica=\"").append(escape(replica.toString())).append("\"} ").append(replica.sessions.get()).append('\n');
+			}
+			out.append("# TYPE tlsconnector_replica_connections_total counter\n");
+			for(TargetReplicas.Replica replica: replicas.getReplicas()) {
+				out.append("tlsconnector_replica_connections_total{replica=\"").append(escape(replica.toString())).append("\"} ").append(replica.connections.get()).append('\n');
+			}
+			out.append("# TYPE tlsconnector_replica_divergences_total counter\n");
+			for(TargetReplicas.Replica replica: replicas.getReplicas()) {
+				out.append("tlsconnector_replica_divergences_total{replica=\"").append(escape(replica.toString())).append("\"} ").append(replica.divergences.get()).append('\n');
+			}
+		}
+
+		long[] pool = getSessionPoolTotals();
+		out.append("# TYPE tlsconnector_session_pool_hits_total counter\n");
+		out.append("tlsconnector_session_pool_hits_total ").append(pool[0]).append('\n');
+		out.append("# TYPE tlsconnector_session_pool_misses_total counter\n");
+		out.append("tlsconnector_session_pool_misses_total ").append(pool[1]).append('\n');
+		out.append("# TYPE tlsconnector_session_pool_stale_total counter\n");
+		out.append("tlsconnector_session_pool_stale_total ").append(pool[2]).append('\n');
+		out.append("# TYPE tlsconnector_session_pool_failures_total counter\n");
+		out.append("tlsconnector_session_pool_failures_total ").append(pool[3]).append('\n');
+	}
+
+	private static void writeHistogram(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+		long cumulative = 0;
+		for(int i = 0; i < LatencyHistogram.BUCKET_COUNT - 1; i++) {
+			cumulative += histogram.getBucketCount(i);
+			out.append(name).append("_bucket{").append(labels).append(",le=\"")
+				.append(LatencyHistogram.getBucketBound(i) / 1e6).append("\"} ").append(cumulative).append('\n');
+		}
+		out.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(histogram.getCount()).append('\n');
+		out.append(name).append("_sum{").append(labels).append("} ").append(seconds(histogram.getTotal())).append('\n');
+		out.append(name).append("_count{").append(labels).append("} ").append(histogram.getCount()).append('\n');
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	private static double seconds(long nanos) {
+		return nanos / 1e9;
+	}
+
+	private synchronized long[] getSessionPoolTotals() {
+		long[] totals = closedSessionPools.clone();
+		for(SessionPool sessionPool: sessionPools) {
+			totals[0] += sessionPool.getHits();
+			totals[1] += sessionPool.getMisses();
+			totals[2] += sessionPool.getStale();
+			totals[3] += sessionPool.getFailures();
+		}
+		return totals;
+	}
+
+	/**
+	 * Summarise the metrics in a single line. Rates are calculated since the previous summary.
+	 *
+	 * @return The summary
+	 */
+	public synchronized String getSummary() {
+		long now = System.nanoTime();
+		double interval = Math.max(1e-9, seconds(now - lastSummary));
+		LatencyHistogram queries = phases[Phase.QUERY.ordinal()];
+		LatencyHistogram resets = phases[Phase.RESET.ordinal()];
+		long queryCount = queries.getCount();
+		long resetCount = resets.getCount();
+
+		// Share of the time spent processing symbols that was spent waiting for the target
+		long queryTime = queries.getTotal();
+		double waiting = queryTime == 0 ? 0 : 100.0 * phases[Phase.WAIT.ordinal()].getTotal() / queryTime;
+
+		StringBuilder summary = new StringBuilder();
+		summary.append(String.format("Metrics: %.1f queries/s, %.1f resets/s, query p50 %.1f ms p99 %.1f ms, reset p50 %.1f ms, waiting %.0f%%, received %d KiB, sent %d KiB",
+				(queryCount - lastQueries) / interval, (resetCount - lastResets) / interval,
+				queries.getPercentile(50) / 1e6, queries.getPercentile(99) / 1e6, resets.getPercentile(50) / 1e6,
+				Math.min(100, waiting), bytesIn.get() / 1024, bytesOut.get() / 1024));
+
+		QueryCache queryCache = connector.queryCache;
+		if(queryCache != null) {
+			summary.append(String.format(", cache %d hits %d misses", queryCache.getHits(), queryCache.getMisses()));
+		}
+		long[] pool = getSessionPoolTotals();
+		if(pool[0] + pool[1] > 0) {
+			summary.append(String.format(", pool %d hits %d misses", pool[0], pool[1]));
+		}
+		long exhausted = connector.socketSettings.getExhausted();
+		if(exhausted > 0) {
+			summary.append(String.format(", no local port available %d times", exhausted));
+		}
+
+		lastSummary = now;
+		lastQueries = queryCount;
+		lastResets = resetCount;
+		return summary.toString();
+	}
+
+	/**
+	 * Print a summary line at a fixed interval in the background
+	 *
+	 * @param interval Interval in seconds
+	 */
+	public void startSummary(long interval) {
+		ScheduledExecutorService scheduler = ConnectorExecutors.createScheduled("metrics-summary");
+		scheduler.scheduleAtFixedRate(() -> {
+			// An exception would cancel all further summaries
+			try {
+				System.out.println(getSummary());
+			} catch(RuntimeException e) {
+				System.err.println("Could not summarise metrics: " + e);
+			}
+		}, interval, interval, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,655 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.bind.JAXBException;
+
+import de.rub.nds.tlsattacker.core.config.Config;
+import de.rub.nds.tlsattacker.core.connection.OutboundConnection;
+import de.rub.nds.tlsattacker.core.constants.ProtocolMessageType;
+import de.rub.nds.tlsattacker.core.protocol.message.AlertMessage;
+import de.rub.nds.tlsattacker.core.protocol.message.ProtocolMessage;
+import de.rub.nds.tlsattacker.core.record.AbstractRecord;
+import de.rub.nds.tlsattacker.core.record.Record;
+import de.rub.nds.tlsattacker.core.state.State;
+import de.rub.nds.tlsattacker.core.state.TlsContext;
+import de.rub.nds.tlsattacker.core.workflow.WorkflowTrace;
+import de.rub.nds.tlsattacker.core.workflow.WorkflowTraceSerializer;
+import de.rub.nds.tlsattacker.core.workflow.action.ReceiveAction;
+import de.rub.nds.tlsattacker.core.workflow.action.SendAction;
+import de.rub.nds.tlsattacker.transport.TransportHandler;
+import de.rub.nds.tlsattacker.transport.tcp.ClientTcpTransportHandler;
+
+/**
+ * A single session with the TLS implementation. Every session has its own State, TlsContext and transport handler,
+ * and its own copies of the loaded messages, so multiple sessions can be used concurrently from different threads.
+ */
+public class ConnectorSession {
+	static final String OUTPUT_INVALID_MAC = "InvalidMAC";
+	static final String OUTPUT_INVALID_MAC_CLOSED = OUTPUT_INVALID_MAC + "|" + TLSAttackerConnector.SYMBOL_CONNECTION_CLOSED;
+	private static final AtomicInteger nextId = new AtomicInteger();
+	
+	// Identifies the session in the query journal
+	final int id = nextId.getAndIncrement();
+	final TLSAttackerConnector connector;
+	final Config config;
+	State state;
+	// Input symbols compiled from copies of the loaded messages, as executing a trace modifies it
+	HashMap<String, CompiledSymbol> symbols = new HashMap<>();
+	// Messages the symbols are compiled from, which are only replaced by reloaded messages on a new connection
+	Map<String, LoadedMessage> loadedMessages = Collections.emptyMap();
+	
+	// Optional cache of query outputs, shared between sessions
+	QueryCache queryCache;
+	// Optional pool of prepared connections for this session
+	SessionPool sessionPool;
+	// Input symbols received since the last RESET
+	final List<String> currentWord = new ArrayList<>();
+	// Input symbols executed on the current connection since it was set up
+	final List<String> executedWord = new ArrayList<>();
+	// Replica of the target used by this session, if multiple replicas are configured
+	TargetReplicas.Replica replica;
+	// Reused for every response, so receiving does not have to allocate them
+	private ReceiveAction receiveAction;
+	private final ResponseEncoder responseEncoder = new ResponseEncoder();
+	// Filled by the transport handler, null if timing is not captured
+	final RecordTiming recordTiming;
+	
+	/**
+	 * Create a new session. The connection is only set up once {@link #initialiseSession()} is called.
+	 * 
+	 * @param connector Connector providing the settings and the loaded messages
+	 * @param config Configuration to use for this session, which should not be modified by other sessions
+	 */
+	public ConnectorSession(TLSAttackerConnector connector, Config config) {
+		this.connector = connector;
+		this.config = config;
+		this.recordTiming = connector.captureTiming ? new RecordTiming() : null;
+	}
+	
+	/**
+	 * Reset the connection with the TLS implementation by closing the current socket and initialising a new session
+	 * 
+	 * @throws IOException
+	 */
+	public void reset() throws IOException {
+		long start = System.nanoTime();
+		close();
+		initialiseSession();
+		connector.metrics.record(ConnectorMetrics.Phase.RESET, System.nanoTime() - start);
+	}
+	
+	/**
+	 * Close the current connection
+	 * @throws IOException 
+	 */
+	public void close() throws IOException {
+		state.getTlsContext().getTransportHandler().closeConnection();
+	}	
+	
+	/**
+	 * Close the current connection and all connections that are kept ready for this session
+	 * 
+	 * @throws IOException
+	 */
+	public void shutdown() throws IOException {
+		if(sessionPool != null) {
+			sessionPool.close();
+			connector.metrics.removeSessionPool(sessionPool);
+		}
+		try {
+			close();
+		} finally {
+			releaseReplica();
+		}
+	}
+	
+	/**
+	 * Initialise a TLS connection by configuring a new context and connecting to the server. If a session pool is
+	 * used, a prepared connection is taken from the pool instead.
+	 * 
+	 * @throws IOException
+	 */
+	public void initialiseSession() throws IOException {
+		state = sessionPool != null ? sessionPool.take() : createState();
+		executedWord.clear();
+		updateMessages();
+	}
+	
+	/**
+	 * Create a new state for this session that is connected to the server. This does not modify the session, so it
+	 * can be used to prepare states from another thread.
+	 * 
+	 * @return The new state
+	 * @throws IOException
+	 */
+	protected State createState() throws IOException {
+		TargetReplicas replicas = connector.replicas;
+		if(replicas == null) {
+			return createState(null);
+		}
+		
+		// Try another replica when connecting fails, but do not try more connections than there are replicas
+		boolean failed = false;
+		for(int attempt = 1; ; attempt++) {
+			TargetReplicas.Replica target = selectReplica(failed);
+			try {
+				State newState = createState(target);
+				replicas.recordConnection(target);
+				return newState;
+			} catch(IOException e) {
+				replicas.recordFailure(target, e);
+				if(attempt >= replicas.getReplicas().size()) {
+					releaseReplica();
+					throw e;
+				}
+				failed = true;
+			}
+		}
+	}
+	
+	/**
+	 * Create a new state connected to a replica of the target
+	 * 
+	 * @param target Replica to connect to, or null to use the default client connection
+	 * @return The new state
+	 * @throws IOException
+	 */
+	protected State createState(TargetReplicas.Replica target) throws IOException {
+		State newState = new State(config);
+
+		TlsContext context = newState.getTlsContext();
+
+		//TransportHandler transporthandler = TransportHandlerFactory.createTransportHandler(config.getConnectionEnd());
+		context.setTransportHandler(createTransportHandler(target));
+		
+		long start = System.nanoTime();
+		context.initTransportHandler();
+		connector.metrics.record(ConnectorMetrics.Phase.CONNECT, System.nanoTime() - start);
+        context.initRecordLayer();
+        return newState;
+	}
+	
+	/**
+	 * Select the replica of the target to connect to. The session keeps using the same replica until it is dropped.
+	 * 
+	 * @param switchReplica Select another replica if possible, because connecting to the current one failed
+	 * @return The replica to connect to
+	 * @throws IOException If no replica is healthy
+	 */
+	protected synchronized TargetReplicas.Replica selectReplica(boolean switchReplica) throws IOException {
+		if(replica == null || switchReplica || !replica.isHealthy()) {
+			replica = connector.replicas.acquire(replica);
+		}
+		return replica;
+	}
+	
+	/**
+	 * Stop using the current replica of the target, if any
+	 */
+	protected synchronized void releaseReplica() {
+		if(replica != null) {
+			connector.replicas.release(replica);
+			replica = null;
+		}
+	}
+	
+	/**
+	 * Create a transport handler of the configured type
+	 * 
+	 * @param target Replica to connect to, or null to use the default client connection
+	 * @return The new transport handler
+	 * @throws IOException
+	 */
+	protected TransportHandler createTransportHandler(TargetReplicas.Replica target) throws IOException {
+		OutboundConnection connection = config.getDefaultClientConnection();
+		String hostname = target != null ? target.getHostname() : connection.getHostname();
+		int port = target != null ? target.getPort() : connection.getPort();
+		
+		ClientTcpTransportHandler transporthandler;
+		switch(connector.transportType) {
+		case NIO:
+			transporthandler = new NioTransportHandler(connection.getTimeout(), hostname, port, connector.directBuffers);
+			break;
+		default:
+			transporthandler = new ConnectorTransportHandler(connection.getTimeout(), hostname, port);
+			break;
+		}
+		
+		((ConnectorTransport) transporthandler).setReceiveMode(connector.receiveMode);
+		((ConnectorTransport) transporthandler).setQuietTime(connector.quietTime);
+		((ConnectorTransport) transporthandler).setSocketSettings(connector.socketSettings);
+		((ConnectorTransport) transporthandler).setRecordTiming(recordTiming);
+		((ConnectorTransport) transporthandler).setReplica(target);
+		return transporthandler;
+	}
+	
+	/**
+	 * Send the provided message to the TLS implementation
+	 * 
+	 * @param message ProtocolMessage to be sent
+	 */
+	protected void sendMessage(ProtocolMessage message) {
+		List<ProtocolMessage> messages = new LinkedList<>();
+		messages.add(message);
+
+		SendAction action = new SendAction(messages);
+		
+		if(connector.debugTraces) {
+			WorkflowTrace test = new WorkflowTrace();
+			test.addTlsAction(action);
+			printTrace(test);
+		}
+		
+		// Need to normalize otherwise an exception is thrown about no connection existing with alias 'null'
+		action.normalize();
+		action.execute(state);
+	}
+	
+	/**
+	 * Execute the provided input symbol
+	 * 
+	 * @param symbol Compiled input symbol to be executed
+	 * @throws IOException If the symbol could not be executed
+	 */
+	protected void sendMessage(CompiledSymbol symbol) throws IOException {
+		ConnectorTransport transport = (ConnectorTransport) state.getTlsContext().getTransportHandler();
+		long start = System.nanoTime();
+		long sent = transport.getBytesSent();
+		
+		symbol.execute(state);
+		
+		connector.metrics.record(ConnectorMetrics.Phase.SEND, System.nanoTime() - start);
+		connector.metrics.addBytesOut(transport.getBytesSent() - sent);
+	}	
+	
+	/**
+	 * Print a trace in XML format for debugging
+	 * 
+	 * @param trace WorkflowTrace to print
+	 */
+	protected void printTrace(WorkflowTrace trace) {
+		try {
+			System.out.println(WorkflowTraceSerializer.write(trace));
+		} catch (JAXBException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+    
+	/**
+	 * Receive message on the TLS connection
+	 * 
+	 * @return A string representation of the message types that were received
+	 * @throws IOException
+	 */
+	protected String receiveMessages() throws IOException {
+		// First check if the socket is still open
+		if(state.getTlsContext().getTransportHandler().isClosed()) {
+			return TLSAttackerConnector.SYMBOL_CONNECTION_CLOSED;
+		}
+
+		// The action is reused for every response of this session
+		ReceiveAction action = receiveAction;
+		if(action == null) {
+			action = new ReceiveAction(new LinkedList<ProtocolMessage>());
+			// Need to normalize otherwise an exception is thrown about no connection existing with alias 'null'
+			action.normalize();
+			receiveAction = action;
+		}
+		action.reset();
+		((ConnectorTransport) state.getTlsContext().getTransportHandler()).startResponse();
+		// Perform the actual receiving of the message
+		action.execute(state);
+
+        // Check for every record if the MAC is valid. If it is not, do not
+        // continue reading it since its contents might be illegible.
+        List<AbstractRecord> records = action.getReceivedRecords();
+        for(int i = 0; i < records.size(); i++) {
+            Record record = (Record) records.get(i);
+
+            if(record == null) {
+                continue;
+            }
+
+            if(record.getComputations() == null) {
+                continue;
+            }
+
+            if(record.getComputations().getMacValid() == null) {
+                continue;
+            }
+
+            if(!record.getComputations().getMacValid()) {
+                if(state.getTlsContext().getTransportHandler().isClosed()) {
+                    return OUTPUT_INVALID_MAC_CLOSED;
+                }
+                return OUTPUT_INVALID_MAC;
+            }
+        }
+
+		// Encode the types of all received messages, reusing output strings that were built before
+		responseEncoder.clear();
+		List<ProtocolMessage> messages = action.getReceivedMessages();
+		for(int i = 0; i < messages.size(); i++) {
+			ProtocolMessage message = messages.get(i);
+			if(message.getProtocolMessageType() == ProtocolMessageType.ALERT) {
+				AlertMessage alert = (AlertMessage)message;
+				responseEncoder.add(ResponseEncoder.getAlertName(alert.getLevel().getValue(), alert.getDescription().getValue()));
+			}
+			else {
+				responseEncoder.add(message.toCompactString());
+			}
+		}
+		
+		if(state.getTlsContext().getTransportHandler().isClosed()) {
+			responseEncoder.add(TLSAttackerConnector.SYMBOL_CONNECTION_CLOSED);
+		}
+		
+		return responseEncoder.encode();
+	}
+	
+	/**
+	 * Send a message of the provided type and return the types of the response messages
+	 * 
+	 * @param inputSymbol A string indicating which type of message to send
+	 * @return A string representation of the message types that were received
+	 * @throws Exception 
+	 */
+	public String processInput(String inputSymbol) throws Exception {
+		long start = System.nanoTime();
+		String output = null;
+		if(recordTiming != null) {
+			// Outputs from the query cache have no timing
+			recordTiming.start();
+		}
+		try {
+			output = queryCache != null ? processCachedInput(inputSymbol) : executeInput(inputSymbol);
+			return output;
+		} finally {
+			long duration = System.nanoTime() - start;
+			connector.metrics.recordSymbol(inputSymbol, duration);
+			QueryJournal journal = connector.journal;
+			if(journal != null && output != null) {
+				journal.record(id, inputSymbol, output, start, duration, recordTiming);
+			}
+		}
+	}
+	
+	/**
+	 * Execute a complete query starting from a reset state
+	 * 
+	 * @param word Input symbols to send, which should not include RESET
+	 * @return The outputs for all input symbols
+	 * @throws Exception
+	 */
+	public List<String> runWord(List<String> word) throws Exception {
+		processInput(TLSAttackerConnector.SYMBOL_RESET);
+		
+		List<String> outputs = new ArrayList<>(word.size());
+		for(String inputSymbol: word) {
+			outputs.add(processInput(inputSymbol));
+		}
+		return outputs;
+	}
+	
+	/**
+	 * Answer an input symbol from the query cache if possible. Only if the output is not known, the connection is
+	 * brought in the state after the current sequence of input symbols by replaying it and the symbol is executed.
+	 * 
+	 * @param inputSymbol A string indicating which type of message to send
+	 * @return A string representation of the message types that were received
+	 * @throws Exception
+	 */
+	protected String processCachedInput(String inputSymbol) throws Exception {
+		// Resetting is deferred until a symbol has to be executed
+		if(inputSymbol.equals(TLSAttackerConnector.SYMBOL_RESET)) {
+			currentWord.clear();
+			return "";
+		}
+		
+		if(!connector.loadedMessages.containsKey(inputSymbol)) {
+			throw new Exception("Unknown input symbol: " + inputSymbol);
+		}
+		
+		currentWord.add(inputSymbol);
+		String output = queryCache.lookup(currentWord);
+		if(output != null) {
+			return output;
+		}
+		
+		// Only reset if the connection is not already in the state after the prefix of the current word
+		List<String> prefix = currentWord.subList(0, currentWord.size() - 1);
+		if(!executedWord.equals(prefix) || (loadedMessages != connector.loadedMessages && !executedWord.isEmpty())) {
+			executeInput(TLSAttackerConnector.SYMBOL_RESET);
+			for(int i = 0; i < prefix.size(); i++) {
+				String replayedOutput = executeInput(prefix.get(i));
+				String cachedOutput = queryCache.store(currentWord.subList(0, i + 1), replayedOutput);
+				if(cachedOutput != null) {
+					System.out.println("Non-deterministic output for " + String.join(" ", currentWord.subList(0, i + 1)) + ": " + cachedOutput + " / " + replayedOutput);
+				}
+			}
+		}
+		
+		output = executeInput(inputSymbol);
+		if(loadedMessages != connector.loadedMessages) {
+			// The messages were reloaded while executing, so the output belongs to the previous messages
+			return output;
+		}
+		queryCache.store(currentWord, output);
+		return output;
+	}
+	
+	/**
+	 * Send a message of the provided type to the TLS implementation and return the types of the response messages
+	 * 
+	 * @param inputSymbol A string indicating which type of message to send
+	 * @return A string representation of the message types that were received
+	 * @throws Exception
+	 */
+	protected String executeInput(String inputSymbol) throws Exception {
+		// Upon receiving the special input symbol RESET, we reset the system
+		if(inputSymbol.equals(TLSAttackerConnector.SYMBOL_RESET)) {
+			reset();
+			return "";			
+		}
+		if(executedWord.isEmpty()) {
+			updateMessages();
+		}
+		executedWord.add(inputSymbol);
+		
+		// Check if the socket is already closed, in which case we don't have to bother trying to send data out
+		if(state.getTlsContext().getTransportHandler().isClosed()) {
+			return TLSAttackerConnector.SYMBOL_CONNECTION_CLOSED;
+		}
+
+		// Process the regular input symbols
+		CompiledSymbol symbol = getSymbol(inputSymbol);
+		if(symbol != null) {
+			if(recordTiming != null) {
+				recordTiming.start();
+			}
+			sendMessage(symbol);
+		} else {
+			throw new Exception("Unknown input symbol: " + inputSymbol);
+		}
+		
+		String output = receiveResponse();
+		TargetReplicas replicas = connector.replicas;
+		if(replicas != null) {
+			// Compare the output with the outputs of the other replicas for the same inputs
+			TargetReplicas.Replica connected = ((ConnectorTransport) state.getTlsContext().getTransportHandler()).getReplica();
+			if(connected != null) {
+				replicas.recordOutput(connected, executedWord, output);
+			}
+		}
+		TimingReport timingReport = connector.timingReport;
+		if(recordTiming != null && timingReport != null) {
+			timingReport.record(executedWord.subList(0, executedWord.size() - 1), inputSymbol, recordTiming);
+		}
+		return output;
+	}
+	
+	/**
+	 * Receive the response to the last executed input symbol, recording the time spent waiting and parsing
+	 * 
+	 * @return A string representation of the message types that were received
+	 * @throws IOException
+	 */
+	protected String receiveResponse() throws IOException {
+		ConnectorTransport transport = (ConnectorTransport) state.getTlsContext().getTransportHandler();
+		long start = System.nanoTime();
+		long fetchTime = transport.getFetchTime();
+		long received = transport.getBytesReceived();
+		
+		try {
+			return receiveAdaptive();
+		} finally {
+			// Everything except waiting for and fetching data is spent parsing the response
+			long waited = transport.getFetchTime() - fetchTime;
+			connector.metrics.record(ConnectorMetrics.Phase.WAIT, waited);
+			connector.metrics.record(ConnectorMetrics.Phase.PARSE, System.nanoTime() - start - waited);
+			connector.metrics.addBytesIn(transport.getBytesReceived() - received);
+		}
+	}
+	
+	/**
+	 * Receive the response to the last executed input symbol. If adaptive timeouts are enabled, only wait as long as
+	 * responses to this symbol took before and record how long it took this time.
+	 * 
+	 * @return A string representation of the message types that were received
+	 * @throws IOException
+	 */
+	protected String receiveAdaptive() throws IOException {
+		AdaptiveTimeout adaptiveTimeout = connector.adaptiveTimeout;
+		TransportHandler transportHandler = state.getTlsContext().getTransportHandler();
+		if(adaptiveTimeout == null || transportHandler.isClosed()) {
+			return receiveMessages();
+		}
+		
+		List<String> prefix = executedWord.subList(0, executedWord.size() - 1);
+		String inputSymbol = executedWord.get(executedWord.size() - 1);
+		long timeout = adaptiveTimeout.getTimeout(prefix, inputSymbol);
+		
+		transportHandler.setTimeout(timeout);
+		try {
+			String output = receiveMessages();
+			adaptiveTimeout.record(prefix, inputSymbol, timeout, ((ConnectorTransport) transportHandler).getResponseLatency(), output);
+			return output;
+		} finally {
+			transportHandler.setTimeout(connector.timeout);
+		}
+	}
+
+	/**
+	 * Get the session's compiled copy of a loaded message, compiling it when it is used for the first time. Sessions
+	 * often execute only a few of the messages, so the other messages are never parsed.
+	 * 
+	 * @param name Name of the message
+	 * @return The compiled input symbol, or null if no message with this name was loaded
+	 * @throws IOException If the message cannot be parsed
+	 */
+	protected CompiledSymbol getSymbol(String name) throws IOException {
+		CompiledSymbol symbol = symbols.get(name);
+		if(symbol == null) {
+			LoadedMessage message = loadedMessages.get(name);
+			if(message == null) {
+				return null;
+			}
+			symbol = compileSymbol(name, message);
+			symbols.put(name, symbol);
+		}
+		return symbol;
+	}
+	
+	/**
+	 * Compile the session's own copy of a loaded message
+	 * 
+	 * @param name Name of the message
+	 * @param message The loaded message
+	 * @return The compiled input symbol
+	 * @throws IOException If the message cannot be parsed
+	 */
+	private CompiledSymbol compileSymbol(String name, LoadedMessage message) throws IOException {
+		WorkflowTrace trace;
+		try {
+			trace = message.copy();
+		} catch(Exception e) {
+			throw new IOException("Could not parse message " + name + ": " + e.getMessage(), e);
+		}
+		if(connector.debugTraces) {
+			printTrace(trace);
+		}
+		if(connector.keyExchangeCache != null) {
+			connector.keyExchangeCache.install(trace);
+		}
+		return new CompiledSymbol(name, trace);
+	}
+	
+	/**
+	 * Start using the messages that are currently loaded by the connector, dropping the symbols of messages that were
+	 * changed or removed. This is only done before the first symbol is executed on a connection, so a word never mixes
+	 * symbols of different versions of the messages.
+	 */
+	protected void updateMessages() {
+		Map<String, LoadedMessage> messages = connector.loadedMessages;
+		if(messages == loadedMessages) {
+			return;
+		}
+		Iterator<Map.Entry<String, CompiledSymbol>> iterator = symbols.entrySet().iterator();
+		while(iterator.hasNext()) {
+			String name = iterator.next().getKey();
+			if(messages.get(name) != loadedMessages.get(name)) {
+				iterator.remove();
+			}
+		}
+		loadedMessages = messages;
+	}
+	
+	/**
+	 * @param queryCache Cache used to answer queries without executing them, or null to execute every query
+	 */
+	public void setQueryCache(QueryCache queryCache) {
+		this.queryCache = queryCache;
+		currentWord.clear();
+	}
+	
+	/**
+	 * Keep a number of connections ready, so a reset does not have to wait for a new connection to be set up
+	 * 
+	 * @param size Number of connections to keep ready
+	 * @param maxIdle Time in milliseconds after which a prepared connection is no longer used
+	 */
+	public void enableSessionPool(int size, long maxIdle) {
+		if(sessionPool != null) {
+			sessionPool.close();
+			connector.metrics.removeSessionPool(sessionPool);
+		}
+		sessionPool = new SessionPool(this, size, maxIdle);
+		connector.metrics.addSessionPool(sessionPool);
+		sessionPool.start();
+	}
+	
+	public SessionPool getSessionPool() {
+		return sessionPool;
+	}
+	
+	public Config getConfig() {
+		return config;
+	}
+	
+	public State getState() {
+		return state;
+	}
+}
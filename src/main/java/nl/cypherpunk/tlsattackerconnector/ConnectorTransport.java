@@ -0,0 +1,75 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.io.IOException;
+
+/**
+ * Settings shared by the transport handlers of the connector
+ */
+public interface ConnectorTransport {
+	/**
+	 * @param receiveMode Strategy used to decide when a response is complete
+	 */
+	void setReceiveMode(ReceiveMode receiveMode);
+
+	/**
+	 * @param quietTime Time in milliseconds the peer has to be quiet before a partial flight is considered complete
+	 */
+	void setQuietTime(long quietTime);
+
+	/**
+	 * @param socketSettings How the connection is set up and closed
+	 */
+	void setSocketSettings(SocketSettings socketSettings);
+
+	/**
+	 * @param recordTiming Timing to fill with the time of every send and of every received record, or null to not
+	 *        capture any timing
+	 */
+	void setRecordTiming(RecordTiming recordTiming);
+
+	/**
+	 * @param replica Replica of the target the connection is set up with, or null if there is a single target
+	 */
+	void setReplica(TargetReplicas.Replica replica);
+
+	/**
+	 * @return Replica of the target the connection is set up with, or null if there is a single target
+	 */
+	TargetReplicas.Replica getReplica();
+
+	/**
+	 * Check, without waiting for data, whether an idle connection can still be used. A connection is no longer usable
+	 * if it was closed, or if the peer closed it or sent data that nobody asked for.
+	 * 
+	 * @return True if the connection is closed or the peer already sent data
+	 * @throws IOException
+	 */
+	boolean isStale() throws IOException;
+
+	/**
+	 * Start receiving the next response, which can be fetched in multiple parts, and measure the time until it
+	 * arrives
+	 */
+	void startResponse();
+
+	/**
+	 * @return Time in nanoseconds from the last call to {@link #startResponse()} until the first data arrived, or -1
+	 *         if nothing was received since
+	 */
+	long getResponseLatency();
+
+	/**
+	 * @return Total time in nanoseconds spent waiting for and fetching data on this connection
+	 */
+	long getFetchTime();
+
+	/**
+	 * @return Total number of bytes received on this connection
+	 */
+	long getBytesReceived();
+
+	/**
+	 * @return Total number of bytes sent on this connection
+	 */
+	long getBytesSent();
+}
@@ -17,39 +17,98 @@ import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PushbackInputStream;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 
 /**
  * @author Joeri de Ruiter <joeri@cs.ru.nl>
  * @author Juraj Somorovsky <juraj.somorovsky@rub.de>
  */
-public class ConnectorTransportHandler extends ClientTcpNoDelayTransportHandler {
+public class ConnectorTransportHandler extends ClientTcpNoDelayTransportHandler implements ConnectorTransport {
+    static final int READ_BUFFER_SIZE = 16384;
+
+    private ReceiveMode receiveMode = ReceiveMode.TIMEOUT;
+    private long quietTime = 20;
+    private SocketSettings socketSettings = new SocketSettings();
+    private final FlightDetector flightDetector = new FlightDetector();
+    private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+    private long responseStart = -1;
+    private long responseLatency = -1;
+    private long fetchTime = 0;
+    private long bytesReceived = 0;
+    private long bytesSent = 0;
+    private RecordTiming recordTiming;
+    private TargetReplicas.Replica replica;
+    // Set when the last fetch of the current response returned a flight
+    private boolean flightReturned = false;
+
     public ConnectorTransportHandler(long timeout, String hostname, int port) throws SocketException {
         super(timeout, hostname, port);
     }    
 
-    @Override    
+    @Override
     public byte[] fetchData() throws IOException {
+        long start = System.nanoTime();
+        byte[] data = null;
+        try {
+            data = receiveMode == ReceiveMode.FLIGHT ? fetchFlight() : fetchAvailable();
+            return data;
+        } finally {
+            fetchTime += System.nanoTime() - start;
+            if(data != null) {
+                bytesReceived += data.length;
+            }
+        }
+    }
+
+    @Override
+    public void sendData(byte[] data) throws IOException {
+        long start = recordTiming != null ? System.nanoTime() : 0;
+        super.sendData(data);
+        bytesSent += data.length;
+        if(recordTiming != null) {
+            recordTiming.sent(start, System.nanoTime());
+        }
+    }
+
+    /**
+     * Wait until data is available and return everything that is available at that moment
+     * 
+     * @return The received data
+     * @throws IOException
+     */
+    protected byte[] fetchAvailable() throws IOException {
         ByteArrayOutputStream stream = new ByteArrayOutputStream();
         
         if(isClosed()) {
         	return stream.toByteArray();
         }        
         
+        if(recordTiming != null) {
+            // Only the records of this fetch are timed
+            flightDetector.startFlight();
+        }
+
+        // The timeout may have changed since the last read
+        socket.setSoTimeout((int) timeout);
         long minTimeMillies = System.currentTimeMillis() + timeout;
-        while ((System.currentTimeMillis() < minTimeMillies) && (stream.toByteArray().length == 0)) {
-        	inStream.mark(1);
+        while ((System.currentTimeMillis() < minTimeMillies) && (stream.size() == 0)) {
         	int test = inStream.read();
         	if(test == -1) {
         		// Socket is no longer usable, so close it properly
         		closeClientConnection();
         		return stream.toByteArray();
         	}
-        	inStream.reset();  
+        	inStream.unread(test);
+        	recordResponse();
+        	long arrival = recordTiming != null ? System.nanoTime() : 0;
+        	int completed = flightDetector.getCompletedRecords();
         	
-        	while (inStream.available() != 0) {
-                int read = inStream.read();
+        	int available;
+        	while ((available = inStream.available()) != 0) {
+                int read = inStream.read(readBuffer, 0, Math.min(available, readBuffer.length));
                 
 	            if(read == -1) {
 	            	System.out.println("Closing socket");
@@ -58,23 +117,218 @@ public class ConnectorTransportHandler extends ClientTcpNoDelayTransportHandler
 	            	return stream.toByteArray();
 	            }
 
-	            stream.write(read);	            	
+	            stream.write(readBuffer, 0, read);
+	            if(recordTiming != null) {
+	                flightDetector.update(readBuffer, 0, read);
+	            }
+            }
+            
+            if(recordTiming != null) {
+                recordArrival(arrival, completed);
             }
         }
         return stream.toByteArray();    	
     }
+
+    /**
+     * Receive data until the peer completed its flight or has been quiet for the configured quiet time. Only if
+     * nothing is received at all, this waits for the full timeout.
+     * 
+     * TLS-Attacker keeps fetching until nothing is returned. If the previous fetch of the same response returned a
+     * complete flight, only data that is already available is returned. After an incomplete flight or an alert, only
+     * data that arrives within the quiet time is returned, so a peer closing the connection is still noticed.
+     * 
+     * @return The received data
+     * @throws IOException
+     */
+    protected byte[] fetchFlight() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+        if(isClosed()) {
+            return stream.toByteArray();
+        }
+
+        long firstWait = timeout;
+        if(flightReturned) {
+            firstWait = flightDetector.isFlightComplete() && !flightDetector.isAlertReceived() ? 0 : quietTime;
+            flightReturned = false;
+        }
+        flightDetector.startFlight();
+        long deadline = System.currentTimeMillis() + firstWait;
+
+        while(true) {
+            long wait;
+            if(stream.size() == 0) {
+                // Nothing received yet, so wait for the remainder of the first wait
+                wait = deadline - System.currentTimeMillis();
+                if(wait <= 0) {
+                    if(inStream.available() == 0) {
+                        break;
+                    }
+                    wait = 1;
+                }
+            } else if(flightDetector.isFlightComplete() && inStream.available() == 0) {
+                break;
+            } else if(flightDetector.isParseable() && !flightDetector.isAtRecordBoundary()) {
+                // Part of a record is still on its way
+                wait = timeout;
+            } else {
+                wait = quietTime;
+            }
+
+            // A timeout of 0 would block forever
+            socket.setSoTimeout((int) Math.max(1, wait));
+
+            int read;
+            try {
+                read = inStream.read(readBuffer);
+            } catch(SocketTimeoutException e) {
+                break;
+            }
+
+            if(read == -1) {
+                // Properly close the socket if the end of the stream was reached
+                closeClientConnection();
+                break;
+            }
+
+            recordResponse();
+            long arrival = recordTiming != null ? System.nanoTime() : 0;
+            stream.write(readBuffer, 0, read);
+            int completed = flightDetector.getCompletedRecords();
+            flightDetector.update(readBuffer, 0, read);
+            if(recordTiming != null) {
+                recordArrival(arrival, completed);
+            }
+        }
+
+        flightReturned = stream.size() > 0;
+        return stream.toByteArray();
+    }
     
     @Override
     public void initialize() throws IOException {
-        socket = new Socket(hostname, port);
+        socket = socketSettings.connect(Socket::new, hostname, port, (int) connectionTimeout);
         // Set timeout so reads won't block forever
         socket.setSoTimeout((int) timeout);
         
-        // Use BufferedStreams so we can mark and look ahead
-        BufferedInputStream bis = new BufferedInputStream(socket.getInputStream());
+        // Use BufferedStreams so we can look ahead without a system call for every byte
+        PushbackInputStream pis = new PushbackInputStream(new BufferedInputStream(socket.getInputStream()));
         BufferedOutputStream bos = new BufferedOutputStream(socket.getOutputStream());
         
-        setStreams(bis, bos);
-    }    
-}
+        setStreams(pis, bos);
+    }
+
+    @Override
+    public void closeConnection() throws IOException {
+        socketSettings.prepareClose(socket);
+        super.closeConnection();
+    }
+
+    @Override
+    public boolean isStale() throws IOException {
+        if(isClosed()) {
+            return true;
+        }
+        if(inStream.available() > 0) {
+            return true;
+        }
 
+        // A blocking socket cannot check for the end of the stream without reading, so wait for the shortest timeout
+        socket.setSoTimeout(1);
+        try {
+            int read = inStream.read();
+            if(read == -1) {
+                return true;
+            }
+            inStream.unread(read);
+            return true;
+        } catch(SocketTimeoutException e) {
+            return false;
+        } finally {
+            socket.setSoTimeout((int) timeout);
+        }
+    }
+
+    /**
+     * Time the records completed by the data that was just read
+     * 
+     * @param arrival Time at which the data was read
+     * @param completed Number of completed records before the data was parsed
+     */
+    private void recordArrival(long arrival, int completed) {
+        // Data that cannot be parsed as records is timed as a single record
+        recordTiming.received(arrival, flightDetector.isParseable() ? flightDetector.getCompletedRecords() - completed : 1);
+    }
+
+    private void recordResponse() {
+        if(responseStart >= 0 && responseLatency < 0) {
+            responseLatency = System.nanoTime() - responseStart;
+        }
+    }
+
+    @Override
+    public void startResponse() {
+        flightReturned = false;
+        responseStart = System.nanoTime();
+        responseLatency = -1;
+    }
+
+    @Override
+    public long getResponseLatency() {
+        return responseLatency;
+    }
+
+    @Override
+    public long getFetchTime() {
+        return fetchTime;
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public ReceiveMode getReceiveMode() {
+        return receiveMode;
+    }
+
+    @Override
+    public void setReceiveMode(ReceiveMode receiveMode) {
+        this.receiveMode = receiveMode;
+    }
+
+    public long getQuietTime() {
+        return quietTime;
+    }
+
+    @Override
+    public void setQuietTime(long quietTime) {
+        this.quietTime = quietTime;
+    }
+
+    @Override
+    public void setSocketSettings(SocketSettings socketSettings) {
+        this.socketSettings = socketSettings;
+    }
+
+    @Override
+    public void setRecordTiming(RecordTiming recordTiming) {
+        this.recordTiming = recordTiming;
+    }
+
+    @Override
+    public void setReplica(TargetReplicas.Replica replica) {
+        this.replica = replica;
+    }
+
+    @Override
+    public TargetReplicas.Replica getReplica() {
+        return replica;
+    }
+}
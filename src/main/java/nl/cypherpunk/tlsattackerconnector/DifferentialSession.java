@@ -0,0 +1,209 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.rub.nds.tlsattacker.core.config.Config;
+import de.rub.nds.tlsattacker.core.state.State;
+
+/**
+ * Session that executes every input symbol on multiple different targets at the same time, each with its own session.
+ * If all targets respond the same, that output is returned. Otherwise the outputs of all targets are returned,
+ * separated by a slash in the order of the targets, and the divergence is reported.
+ *
+ * The query cache, journal and batch protocol work on the combined outputs, so a learner learns the product of the
+ * targets in the time it takes the slowest target.
+ */
+public class DifferentialSession extends ConnectorSession {
+	static final String OUTPUT_SEPARATOR = "/";
+
+	/**
+	 * Action on a session of a single target
+	 */
+	private interface TargetAction<T> {
+		T run(ConnectorSession session) throws Exception;
+	}
+
+	private final List<TargetReplicas.Replica> targets;
+	private final List<ConnectorSession> sessions = new ArrayList<>();
+	private final AtomicLong divergences = new AtomicLong();
+	// Number of outputs of every target that differed from the output of the first target
+	private final long[] targetDivergences;
+
+	/**
+	 * Create a new session. The connections are only set up once {@link #initialiseSession()} is called.
+	 *
+	 * @param connector Connector providing the settings and the loaded messages
+	 * @param config Configuration to use for the sessions of the targets, which is copied for every target
+	 * @param targets Targets to execute the input symbols on
+	 */
+	public DifferentialSession(TLSAttackerConnector connector, Config config, List<TargetReplicas.Replica> targets) {
+		super(connector, config);
+		this.targets = targets;
+		this.targetDivergences = new long[targets.size()];
+		for(TargetReplicas.Replica target: targets) {
+			sessions.add(connector.createTargetSession(config, target.getHostname(), target.getPort()));
+		}
+	}
+
+	@Override
+	public void initialiseSession() throws IOException {
+		runAll(session -> {
+			session.initialiseSession();
+			return null;
+		});
+		executedWord.clear();
+	}
+
+	@Override
+	public void reset() throws IOException {
+		runAll(session -> {
+			session.reset();
+			return null;
+		});
+		executedWord.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		runAll(session -> {
+			session.close();
+			return null;
+		});
+	}
+
+	@Override
+	public void shutdown() throws IOException {
+		IOException error = null;
+		for(ConnectorSession session: sessions) {
+			try {
+				session.shutdown();
+			} catch(IOException e) {
+				error = e;
+			}
+		}
+		if(error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Only the sessions of the targets compile and execute symbols, so only keep track of the messages they use
+	 */
+	@Override
+	protected void updateMessages() {
+		loadedMessages = connector.loadedMessages;
+	}
+
+	@Override
+	protected String executeInput(String inputSymbol) throws Exception {
+		if(inputSymbol.equals(TLSAttackerConnector.SYMBOL_RESET)) {
+			reset();
+			return "";
+		}
+		if(executedWord.isEmpty()) {
+			updateMessages();
+		}
+		executedWord.add(inputSymbol);
+
+		List<String> outputs = runAll(session -> session.executeInput(inputSymbol));
+		String first = outputs.get(0);
+		boolean divergent = false;
+		for(int i = 1; i < outputs.size(); i++) {
+			if(!outputs.get(i).equals(first)) {
+				targetDivergences[i]++;
+				divergent = true;
+			}
+		}
+		if(!divergent) {
+			return first;
+		}
+
+		divergences.incrementAndGet();
+		StringBuilder report = new StringBuilder("Divergence for ").append(String.join(" ", executedWord)).append(":");
+		for(int i = 0; i < outputs.size(); i++) {
+			report.append(' ').append(targets.get(i)).append(' ').append(outputs.get(i));
+		}
+		System.out.println(report);
+		return String.join(OUTPUT_SEPARATOR, outputs);
+	}
+
+	/**
+	 * Run an action on the sessions of all targets at the same time, using the calling thread for the first target
+	 *
+	 * @param action Action to run
+	 * @return The results of the action for every target
+	 * @throws IOException If the action failed for any of the targets
+	 */
+	private <T> List<T> runAll(TargetAction<T> action) throws IOException {
+		List<Future<T>> futures = new ArrayList<>(sessions.size());
+		for(int i = 1; i < sessions.size(); i++) {
+			ConnectorSession session = sessions.get(i);
+			futures.add(connector.differentialExecutor.submit(() -> action.run(session)));
+		}
+
+		List<T> results = new ArrayList<>(sessions.size());
+		Exception error = null;
+		try {
+			results.add(action.run(sessions.get(0)));
+		} catch(Exception e) {
+			error = e;
+		}
+		// Always wait for the other targets, so a session is never used by two threads
+		for(Future<T> future: futures) {
+			try {
+				results.add(future.get());
+			} catch(ExecutionException e) {
+				if(error == null) {
+					error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				error = e;
+			}
+		}
+
+		if(error instanceof IOException) {
+			throw (IOException) error;
+		} else if(error != null) {
+			throw new IOException(error.getMessage(), error);
+		}
+		return results;
+	}
+
+	@Override
+	public void enableSessionPool(int size, long maxIdle) {
+		for(ConnectorSession session: sessions) {
+			session.enableSessionPool(size, maxIdle);
+		}
+	}
+
+	@Override
+	public SessionPool getSessionPool() {
+		return sessions.get(0).getSessionPool();
+	}
+
+	/**
+	 * @return The state of the session of the first target
+	 */
+	@Override
+	public State getState() {
+		return sessions.get(0).getState();
+	}
+
+	public long getDivergences() {
+		return divergences.get();
+	}
+
+	public String getStatistics() {
+		StringBuilder statistics = new StringBuilder(String.format("Differential: %d divergent outputs", divergences.get()));
+		for(int i = 1; i < targets.size(); i++) {
+			statistics.append(String.format(", %s differed from %s %d times", targets.get(i), targets.get(0), targetDivergences[i]));
+		}
+		return statistics.toString();
+	}
+}
@@ -0,0 +1,199 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import de.rub.nds.tlsattacker.core.constants.ProtocolVersion;
+
+/**
+ * TLS server running inside the connector's JVM, so the connector can be tested and benchmarked without an external
+ * TLS implementation. It uses JSSE with freshly generated RSA and EC keys and self-signed certificates. After the
+ * handshake, every chunk of application data is answered with a fixed HTTP response, after which the connection is
+ * closed.
+ */
+public class EmbeddedTarget {
+	static final byte[] RESPONSE = "HTTP/1.0 200 OK\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+	static final char[] KEY_PASSWORD = "embedded".toCharArray();
+
+	/**
+	 * Key exchanges that can be enabled, matching the ClientKeyExchange messages that are provided
+	 */
+	public enum KeyExchange {
+		RSA("TLS_RSA_"),
+		DHE("TLS_DHE_RSA_"),
+		ECDHE("TLS_ECDHE_RSA_", "TLS_ECDHE_ECDSA_");
+
+		final String[] prefixes;
+
+		KeyExchange(String... prefixes) {
+			this.prefixes = prefixes;
+		}
+
+		boolean matches(String cipherSuite) {
+			for(String prefix: prefixes) {
+				if(cipherSuite.startsWith(prefix)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private SSLServerSocket serverSocket;
+	private ExecutorService executor;
+
+	/**
+	 * Start the server on a free port of the loopback interface
+	 *
+	 * @param protocolVersion Protocol version the server should accept
+	 * @param keyExchanges Key exchanges to enable
+	 * @param cipherSuites Cipher suites to enable, or an empty list to enable all supported cipher suites that use one
+	 *        of the key exchanges
+	 * @throws Exception
+	 */
+	public void start(ProtocolVersion protocolVersion, Collection<KeyExchange> keyExchanges, Collection<String> cipherSuites) throws Exception {
+		SSLContext context = SSLContext.getInstance("TLS");
+		KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		keyManagerFactory.init(createKeyStore(), KEY_PASSWORD);
+		context.init(keyManagerFactory.getKeyManagers(), null, new SecureRandom());
+
+		serverSocket = (SSLServerSocket) context.getServerSocketFactory().createServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		serverSocket.setEnabledProtocols(new String[] { getProtocolName(protocolVersion) });
+
+		List<String> enabled = new ArrayList<>();
+		for(String cipherSuite: serverSocket.getSupportedCipherSuites()) {
+			if(!cipherSuites.isEmpty() && !cipherSuites.contains(cipherSuite)) {
+				continue;
+			}
+			for(KeyExchange keyExchange: keyExchanges) {
+				if(keyExchange.matches(cipherSuite)) {
+					enabled.add(cipherSuite);
+					break;
+				}
+			}
+		}
+		if(enabled.isEmpty()) {
+			throw new Exception("None of the requested cipher suites is supported by the embedded target");
+		}
+		serverSocket.setEnabledCipherSuites(enabled.toArray(new String[0]));
+
+		executor = ConnectorExecutors.create(ExecutorType.CACHED, 0, "embedded-target");
+		Thread acceptor = new Thread(this::acceptConnections, "embedded-target-accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Stop accepting connections
+	 */
+	public void stop() throws IOException {
+		serverSocket.close();
+		executor.shutdownNow();
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	public String[] getEnabledCipherSuites() {
+		return serverSocket.getEnabledCipherSuites();
+	}
+
+	private void acceptConnections() {
+		while(!serverSocket.isClosed()) {
+			try {
+				final Socket socket = serverSocket.accept();
+				executor.execute(() -> handleConnection((SSLSocket) socket));
+			} catch(IOException e) {
+				// The server socket was closed
+			}
+		}
+	}
+
+	private void handleConnection(SSLSocket socket) {
+		try {
+			socket.setTcpNoDelay(true);
+			InputStream in = socket.getInputStream();
+			OutputStream out = socket.getOutputStream();
+			byte[] buffer = new byte[4096];
+			// Reading performs the handshake first, failures are reported to the client as alerts by JSSE
+			if(in.read(buffer) > 0) {
+				out.write(RESPONSE);
+				out.flush();
+			}
+		} catch(IOException e) {
+			// Handshake failures are expected when testing
+		} finally {
+			try {
+				socket.close();
+			} catch(IOException e) {
+				// Nothing left to clean up
+			}
+		}
+	}
+
+	private static String getProtocolName(ProtocolVersion protocolVersion) throws Exception {
+		switch(protocolVersion) {
+		case TLS10:
+			return "TLSv1";
+		case TLS11:
+			return "TLSv1.1";
+		case TLS12:
+			return "TLSv1.2";
+		default:
+			throw new Exception("Protocol version " + protocolVersion + " is not supported by the embedded target");
+		}
+	}
+
+	private static KeyStore createKeyStore() throws Exception {
+		KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+		keyStore.load(null, null);
+
+		KeyPairGenerator rsaGenerator = KeyPairGenerator.getInstance("RSA");
+		rsaGenerator.initialize(2048);
+		KeyPair rsaKeyPair = rsaGenerator.generateKeyPair();
+		keyStore.setKeyEntry("rsa", rsaKeyPair.getPrivate(), KEY_PASSWORD, new Certificate[] { createCertificate(rsaKeyPair, "SHA256withRSA") });
+
+		KeyPairGenerator ecGenerator = KeyPairGenerator.getInstance("EC");
+		ecGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+		KeyPair ecKeyPair = ecGenerator.generateKeyPair();
+		keyStore.setKeyEntry("ec", ecKeyPair.getPrivate(), KEY_PASSWORD, new Certificate[] { createCertificate(ecKeyPair, "SHA256withECDSA") });
+
+		return keyStore;
+	}
+
+	private static X509Certificate createCertificate(KeyPair keyPair, String signatureAlgorithm) throws Exception {
+		X500Name name = new X500Name("CN=localhost");
+		long now = System.currentTimeMillis();
+		JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(name, BigInteger.valueOf(now), new Date(now - 86400000L),
+				new Date(now + 365 * 86400000L), name, keyPair.getPublic());
+		return new JcaX509CertificateConverter().getCertificate(builder.build(new JcaContentSignerBuilder(signatureAlgorithm).build(keyPair.getPrivate())));
+	}
+}
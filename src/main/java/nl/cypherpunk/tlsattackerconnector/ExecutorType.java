@@ -0,0 +1,19 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+/**
+ * Kinds of thread pools that can be used to run concurrent sessions
+ */
+public enum ExecutorType {
+	/**
+	 * A fixed number of platform threads
+	 */
+	FIXED,
+	/**
+	 * Platform threads that are created when needed and reused when idle
+	 */
+	CACHED,
+	/**
+	 * A new virtual thread for every task, if supported by the JVM
+	 */
+	VIRTUAL
+}
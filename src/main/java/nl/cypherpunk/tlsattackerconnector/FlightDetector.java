@@ -0,0 +1,202 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Incrementally parses TLS record headers (and the handshake message headers in plaintext handshake records) of
+ * the data received from the peer, to determine whether the peer has finished sending its current flight.
+ *
+ * A flight is considered complete when a ServerHelloDone or HelloRequest was received, when an alert was received
+ * or when an encrypted handshake record (i.e. a Finished message) was received after the peer sent a
+ * ChangeCipherSpec. If data is received that does not look like TLS records, the detector gives up and the caller
+ * has to rely on the peer going quiet instead.
+ */
+public class FlightDetector {
+	static final int CONTENT_TYPE_CHANGE_CIPHER_SPEC = 20;
+	static final int CONTENT_TYPE_ALERT = 21;
+	static final int CONTENT_TYPE_HANDSHAKE = 22;
+	static final int CONTENT_TYPE_APPLICATION_DATA = 23;
+	static final int CONTENT_TYPE_HEARTBEAT = 24;
+
+	static final int HANDSHAKE_TYPE_HELLO_REQUEST = 0;
+	static final int HANDSHAKE_TYPE_SERVER_HELLO_DONE = 14;
+
+	static final int RECORD_HEADER_LENGTH = 5;
+	static final int HANDSHAKE_HEADER_LENGTH = 4;
+
+	// Record layer state
+	private final byte[] recordHeader = new byte[RECORD_HEADER_LENGTH];
+	private int recordHeaderPos = 0;
+	private int recordRemaining = 0;
+	private int contentType = -1;
+
+	// Handshake layer state, handshake messages can span multiple records
+	private final byte[] handshakeHeader = new byte[HANDSHAKE_HEADER_LENGTH];
+	private int handshakeHeaderPos = 0;
+	private int handshakeRemaining = 0;
+
+	// Set once the peer sent a ChangeCipherSpec, after which the record contents can no longer be inspected
+	private boolean encrypted = false;
+	private boolean parseable = true;
+	private boolean flightComplete = false;
+	private boolean alertReceived = false;
+	private int completedRecords = 0;
+
+	/**
+	 * Prepare for receiving the next flight. The encryption state is kept, as it belongs to the connection.
+	 */
+	public void startFlight() {
+		flightComplete = false;
+		alertReceived = false;
+		completedRecords = 0;
+	}
+
+	/**
+	 * Feed received bytes to the detector
+	 *
+	 * @param data Buffer containing the received bytes
+	 * @param offset Offset of the first received byte in the buffer
+	 * @param length Number of received bytes
+	 */
+	public void update(byte[] data, int offset, int length) {
+		update(ByteBuffer.wrap(data, offset, length));
+	}
+
+	/**
+	 * Feed received bytes to the detector. The position of the buffer is not modified.
+	 *
+	 * @param data Buffer containing the received bytes between its position and limit
+	 */
+	public void update(ByteBuffer data) {
+		int pos = data.position();
+		int end = data.limit();
+
+		while(parseable && pos < end) {
+			if(recordHeaderPos < RECORD_HEADER_LENGTH) {
+				recordHeader[recordHeaderPos++] = data.get(pos++);
+
+				if(recordHeaderPos == RECORD_HEADER_LENGTH) {
+					contentType = recordHeader[0] & 0xff;
+					recordRemaining = ((recordHeader[3] & 0xff) << 8) | (recordHeader[4] & 0xff);
+
+					if(contentType < CONTENT_TYPE_CHANGE_CIPHER_SPEC || contentType > CONTENT_TYPE_HEARTBEAT) {
+						// Not a TLS record, so we cannot tell where flights end
+						parseable = false;
+						return;
+					}
+
+					if(recordRemaining == 0) {
+						completeRecord();
+					}
+				}
+				continue;
+			}
+
+			int chunk = Math.min(recordRemaining, end - pos);
+			if(contentType == CONTENT_TYPE_HANDSHAKE && !encrypted) {
+				updateHandshake(data, pos, chunk);
+			}
+			pos += chunk;
+			recordRemaining -= chunk;
+
+			if(recordRemaining == 0) {
+				completeRecord();
+			}
+		}
+	}
+
+	private void updateHandshake(ByteBuffer data, int offset, int length) {
+		int pos = offset;
+		int end = offset + length;
+
+		while(pos < end) {
+			if(handshakeHeaderPos < HANDSHAKE_HEADER_LENGTH) {
+				handshakeHeader[handshakeHeaderPos++] = data.get(pos++);
+
+				if(handshakeHeaderPos == HANDSHAKE_HEADER_LENGTH) {
+					handshakeRemaining = ((handshakeHeader[1] & 0xff) << 16) | ((handshakeHeader[2] & 0xff) << 8) | (handshakeHeader[3] & 0xff);
+					if(handshakeRemaining == 0) {
+						completeHandshakeMessage();
+					}
+				}
+				continue;
+			}
+
+			int chunk = Math.min(handshakeRemaining, end - pos);
+			pos += chunk;
+			handshakeRemaining -= chunk;
+
+			if(handshakeRemaining == 0) {
+				completeHandshakeMessage();
+			}
+		}
+	}
+
+	private void completeHandshakeMessage() {
+		int type = handshakeHeader[0] & 0xff;
+		if(type == HANDSHAKE_TYPE_SERVER_HELLO_DONE || type == HANDSHAKE_TYPE_HELLO_REQUEST) {
+			flightComplete = true;
+		}
+		handshakeHeaderPos = 0;
+	}
+
+	private void completeRecord() {
+		completedRecords++;
+
+		switch(contentType) {
+		case CONTENT_TYPE_CHANGE_CIPHER_SPEC:
+			encrypted = true;
+			break;
+		case CONTENT_TYPE_ALERT:
+			flightComplete = true;
+			alertReceived = true;
+			break;
+		case CONTENT_TYPE_HANDSHAKE:
+			if(encrypted) {
+				// The first encrypted handshake message is the Finished message that ends the flight
+				flightComplete = true;
+			}
+			break;
+		default:
+			break;
+		}
+
+		recordHeaderPos = 0;
+		contentType = -1;
+	}
+
+	/**
+	 * @return True if a message was received that ends the flight of the peer
+	 */
+	public boolean isFlightComplete() {
+		return parseable && flightComplete && isAtRecordBoundary();
+	}
+
+	/**
+	 * @return True if an alert was received in the current flight, after which the peer usually closes the connection
+	 */
+	public boolean isAlertReceived() {
+		return alertReceived;
+	}
+
+	/**
+	 * @return True if no partially received record is pending
+	 */
+	public boolean isAtRecordBoundary() {
+		return recordHeaderPos == 0;
+	}
+
+	/**
+	 * @return False if the received data could not be parsed as TLS records
+	 */
+	public boolean isParseable() {
+		return parseable;
+	}
+
+	/**
+	 * @return Number of records completely received since the start of the current flight
+	 */
+	public int getCompletedRecords() {
+		return completedRecords;
+	}
+}
@@ -0,0 +1,117 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes the words recorded in a query journal against the target again, as fast as possible, and reports every
+ * output that differs from the journal. Every distinct word is executed once, using a number of concurrent sessions.
+ */
+public class JournalReplay {
+	private final TLSAttackerConnector connector;
+	private final int threads;
+
+	private final AtomicInteger differences = new AtomicInteger();
+	private final AtomicLong errors = new AtomicLong();
+
+	/**
+	 * @param connector Connector providing the settings and the loaded messages
+	 * @param threads Number of words that are executed concurrently
+	 */
+	public JournalReplay(TLSAttackerConnector connector, int threads) {
+		this.connector = connector;
+		this.threads = threads;
+	}
+
+	/**
+	 * Replay a journal
+	 *
+	 * @param file Journal to replay
+	 * @return Number of words of which an output differs or that could not be executed
+	 * @throws Exception
+	 */
+	public int replay(File file) throws Exception {
+		List<String> keys = new ArrayList<>();
+		List<QueryJournal.Word> journalWords = QueryJournal.readWords(file, keys);
+
+		String key = connector.getConfigurationKey();
+		for(String journalKey: keys) {
+			if(!journalKey.equals(key)) {
+				System.out.println("Warning: part of the journal was recorded with a different target, configuration or messages");
+				break;
+			}
+		}
+
+		// Only the first outputs of a word are compared against
+		Map<List<String>, List<String>> words = new LinkedHashMap<>();
+		int nonDeterministic = 0;
+		for(QueryJournal.Word word: journalWords) {
+			List<String> outputs = words.putIfAbsent(word.getInputs(), word.getOutputs());
+			if(outputs != null && !outputs.equals(word.getOutputs())) {
+				nonDeterministic++;
+			}
+		}
+		System.out.println("Replaying " + words.size() + " distinct words of " + journalWords.size() + " words in " + file.getPath());
+		if(nonDeterministic > 0) {
+			System.out.println(nonDeterministic + " words already had different outputs within the journal");
+		}
+
+		final List<Map.Entry<List<String>, List<String>>> entries = new ArrayList<>(words.entrySet());
+		final AtomicInteger next = new AtomicInteger();
+		long start = System.nanoTime();
+
+		ExecutorService executor = ConnectorExecutors.create(ExecutorType.FIXED, threads, "replay");
+		try {
+			List<Future<?>> workers = new ArrayList<>();
+			for(int i = 0; i < threads; i++) {
+				workers.add(executor.submit(() -> {
+					replayWords(entries, next);
+					return null;
+				}));
+			}
+			for(Future<?> worker: workers) {
+				worker.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+		System.out.println(String.format("Replayed %d words in %.1f s (%.1f words/s): %d differ, %d failed",
+				entries.size(), seconds, entries.size() / seconds, differences.get(), errors.get()));
+		return differences.get() + (int) errors.get();
+	}
+
+	private void replayWords(List<Map.Entry<List<String>, List<String>>> entries, AtomicInteger next) throws Exception {
+		ConnectorSession session = connector.createSession();
+		if(connector.sessionPoolSize > 0) {
+			session.enableSessionPool(connector.sessionPoolSize, connector.sessionPoolMaxIdle);
+		}
+		try {
+			int index;
+			while((index = next.getAndIncrement()) < entries.size()) {
+				List<String> word = entries.get(index).getKey();
+				List<String> expected = entries.get(index).getValue();
+				try {
+					List<String> outputs = session.runWord(word);
+					if(!outputs.equals(expected)) {
+						differences.incrementAndGet();
+						System.out.println("Differs: " + String.join(" ", word) + " / " + String.join(" ", expected) + " / " + String.join(" ", outputs));
+					}
+				} catch(Exception e) {
+					errors.incrementAndGet();
+					System.out.println("Failed: " + String.join(" ", word) + ": " + e.getMessage());
+				}
+			}
+		} finally {
+			session.shutdown();
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import de.rub.nds.modifiablevariable.util.ArrayConverter;
+import de.rub.nds.tlsattacker.core.constants.HandshakeByteLength;
+import de.rub.nds.tlsattacker.core.constants.NamedGroup;
+import de.rub.nds.tlsattacker.core.crypto.ec.CurveFactory;
+import de.rub.nds.tlsattacker.core.crypto.ec.EllipticCurve;
+import de.rub.nds.tlsattacker.core.crypto.ec.Point;
+import de.rub.nds.tlsattacker.core.protocol.message.ProtocolMessage;
+import de.rub.nds.tlsattacker.core.workflow.WorkflowTrace;
+import de.rub.nds.tlsattacker.core.workflow.action.SendAction;
+import de.rub.nds.tlsattacker.core.workflow.action.TlsAction;
+
+/**
+ * Takes the public key operations of RSA, DH and ECDH ClientKeyExchange messages off the query path. It is shared by
+ * all sessions.
+ *
+ * By default TLS-Attacker uses fixed client keys and a deterministic random generator for every connection, so the
+ * client public keys and the encrypted premaster secret only depend on the parameters and the key of the server.
+ * These results are computed once and reused, which does not change any of the messages that are sent.
+ *
+ * With fresh randomness, every ClientKeyExchange uses a new private key or premaster secret instead. These are
+ * generated together with their public keys or encryptions by a background thread, which keeps a number of them
+ * ready for every set of parameters seen so far.
+ */
+public class KeyExchangeCache {
+	// Limit on the number of stored results, after which new results are no longer stored
+	static final int MAX_ENTRIES = 4096;
+	// Length of freshly generated DH private keys, matching the length of the default client key
+	static final int DH_PRIVATE_KEY_BITS = 256;
+
+	private final boolean fresh;
+	private final int poolSize;
+	private final SecureRandom random = new SecureRandom();
+	private final ConcurrentHashMap<List<Object>, Object> results = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<List<Object>, Pool> pools = new ConcurrentHashMap<>();
+	private final ExecutorService producer;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong pooled = new AtomicLong();
+	private final AtomicLong generated = new AtomicLong();
+
+	/**
+	 * @param fresh Use fresh key material for every ClientKeyExchange instead of reusing results
+	 * @param poolSize Number of fresh key pairs or premaster secrets to keep ready for every set of parameters
+	 */
+	public KeyExchangeCache(boolean fresh, int poolSize) {
+		this.fresh = fresh;
+		this.poolSize = poolSize;
+		this.producer = fresh ? ConnectorExecutors.create(ExecutorType.FIXED, 1, "key-exchange") : null;
+	}
+
+	/**
+	 * Replace the RSA, DH and ECDH ClientKeyExchange messages sent by a trace with versions that use this cache
+	 *
+	 * @param trace Trace to modify
+	 */
+	public void install(WorkflowTrace trace) {
+		for(TlsAction action: trace.getTlsActions()) {
+			if(!(action instanceof SendAction)) {
+				continue;
+			}
+			List<ProtocolMessage> messages = ((SendAction) action).getMessages();
+			for(int i = 0; i < messages.size(); i++) {
+				messages.set(i, CachedClientKeyExchange.wrap(messages.get(i), this));
+			}
+		}
+	}
+
+	public boolean isFresh() {
+		return fresh;
+	}
+
+	/**
+	 * Compute base^exponent mod modulus, reusing the result of an earlier computation with the same values unless
+	 * fresh randomness is used
+	 */
+	public BigInteger modPow(BigInteger base, BigInteger exponent, BigInteger modulus) {
+		if(fresh) {
+			return base.modPow(exponent, modulus);
+		}
+		List<Object> key = Arrays.asList("modPow", base, exponent, modulus);
+		BigInteger result = (BigInteger) results.get(key);
+		if(result == null) {
+			result = base.modPow(exponent, modulus);
+			store(key, result);
+		} else {
+			hits.incrementAndGet();
+		}
+		return result;
+	}
+
+	/**
+	 * Multiply a point on a curve, reusing the result of an earlier computation with the same values unless fresh
+	 * randomness is used
+	 */
+	public Point multiply(NamedGroup group, EllipticCurve curve, BigInteger scalar, Point point) {
+		if(fresh || point.isAtInfinity()) {
+			return curve.mult(scalar, point);
+		}
+		List<Object> key = Arrays.asList("multiply", group, scalar, point);
+		Point result = (Point) results.get(key);
+		if(result == null) {
+			result = curve.mult(scalar, point);
+			store(key, result);
+		} else {
+			hits.incrementAndGet();
+		}
+		return result;
+	}
+
+	private void store(List<Object> key, Object result) {
+		misses.incrementAndGet();
+		if(results.size() < MAX_ENTRIES) {
+			results.put(key, result);
+		}
+	}
+
+	/**
+	 * Take a fresh DH key pair
+	 *
+	 * @return The private key and the public key
+	 */
+	public BigInteger[] takeDhKeyPair(BigInteger generator, BigInteger modulus) {
+		return (BigInteger[]) take(Arrays.asList("dh", generator, modulus), () -> {
+			int bits = Math.max(1, Math.min(DH_PRIVATE_KEY_BITS, modulus.bitLength() - 2));
+			BigInteger privateKey;
+			do {
+				privateKey = new BigInteger(bits, random);
+			} while(privateKey.signum() == 0);
+			return new BigInteger[] { privateKey, generator.modPow(privateKey, modulus) };
+		});
+	}
+
+	/**
+	 * Take a fresh EC key pair
+	 *
+	 * @return The private key and the public key
+	 */
+	public EcKeyPair takeEcKeyPair(NamedGroup group) {
+		return (EcKeyPair) take(Arrays.asList("ec", group), () -> {
+			EllipticCurve curve = CurveFactory.getCurve(group);
+			BigInteger order = curve.getBasePointOrder();
+			BigInteger privateKey;
+			do {
+				privateKey = new BigInteger(order.bitLength(), random);
+			} while(privateKey.signum() == 0 || privateKey.compareTo(order) >= 0);
+			return new EcKeyPair(privateKey, curve.mult(privateKey, curve.getBasePoint()));
+		});
+	}
+
+	/**
+	 * Take a fresh premaster secret encrypted for an RSA key
+	 *
+	 * @param version Protocol version at the start of the premaster secret
+	 * @return The premaster secret, or null if the key is too short to hold it
+	 */
+	public RsaPremasterSecret takeRsaPremasterSecret(BigInteger modulus, BigInteger exponent, byte[] version) {
+		int keyLength = modulus.bitLength() / 8;
+		int paddingLength = keyLength - HandshakeByteLength.PREMASTER_SECRET - 3;
+		if(paddingLength <= 0) {
+			return null;
+		}
+		return (RsaPremasterSecret) take(Arrays.asList("rsa", modulus, exponent, new BigInteger(1, version)), () -> {
+			byte[] padding = new byte[paddingLength];
+			random.nextBytes(padding);
+			ArrayConverter.makeArrayNonZero(padding);
+			byte[] secret = new byte[HandshakeByteLength.PREMASTER_SECRET - version.length];
+			random.nextBytes(secret);
+			byte[] premasterSecret = ArrayConverter.concatenate(version, secret);
+			byte[] plain = ArrayConverter.concatenate(new byte[] { 0x00, 0x02 }, padding, new byte[] { 0x00 }, premasterSecret);
+			byte[] encrypted = ArrayConverter.bigIntegerToByteArray(new BigInteger(1, plain).modPow(exponent, modulus), keyLength, true);
+			return new RsaPremasterSecret(padding, premasterSecret, plain, encrypted);
+		});
+	}
+
+	private Object take(List<Object> key, Supplier<Object> generator) {
+		Pool pool = pools.computeIfAbsent(key, k -> new Pool(generator));
+		Object material = pool.ready.poll();
+		if(material != null) {
+			pooled.incrementAndGet();
+		} else {
+			generated.incrementAndGet();
+			material = generator.get();
+		}
+		pool.refill();
+		return material;
+	}
+
+	/**
+	 * Stop generating fresh key material
+	 */
+	public void close() {
+		if(producer != null) {
+			producer.shutdownNow();
+		}
+	}
+
+	public String getStatistics() {
+		if(fresh) {
+			return String.format("Key exchange cache: %d parameter sets, %d taken from pool, %d generated on demand", pools.size(), pooled.get(), generated.get());
+		}
+		return String.format("Key exchange cache: %d results stored, %d hits, %d misses", results.size(), hits.get(), misses.get());
+	}
+
+	/**
+	 * Fresh key material for one set of parameters, which is refilled in the background
+	 */
+	private class Pool {
+		final Queue<Object> ready = new ConcurrentLinkedQueue<>();
+		final AtomicBoolean refilling = new AtomicBoolean();
+		final Supplier<Object> generator;
+
+		Pool(Supplier<Object> generator) {
+			this.generator = generator;
+		}
+
+		void refill() {
+			if(!refilling.compareAndSet(false, true)) {
+				return;
+			}
+			try {
+				producer.execute(() -> {
+					try {
+						while(ready.size() < poolSize) {
+							ready.add(generator.get());
+						}
+					} finally {
+						refilling.set(false);
+					}
+				});
+			} catch(RejectedExecutionException e) {
+				// The cache was closed, material is generated on demand from now on
+				refilling.set(false);
+			}
+		}
+	}
+
+	public static class EcKeyPair {
+		final BigInteger privateKey;
+		final Point publicKey;
+
+		EcKeyPair(BigInteger privateKey, Point publicKey) {
+			this.privateKey = privateKey;
+			this.publicKey = publicKey;
+		}
+	}
+
+	public static class RsaPremasterSecret {
+		final byte[] padding;
+		final byte[] premasterSecret;
+		// Padded premaster secret, to check the message did not modify it before using the encryption
+		final byte[] plain;
+		final byte[] encrypted;
+
+		RsaPremasterSecret(byte[] padding, byte[] premasterSecret, byte[] plain, byte[] encrypted) {
+			this.padding = padding;
+			this.premasterSecret = premasterSecret;
+			this.plain = plain;
+			this.encrypted = encrypted;
+		}
+	}
+}
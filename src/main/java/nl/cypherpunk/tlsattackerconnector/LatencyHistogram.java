@@ -0,0 +1,107 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations with buckets of increasing powers of two microseconds. Recording is lock-free, so it can be
+ * used from all sessions at the same time.
+ */
+public class LatencyHistogram {
+	// Bucket i counts durations below 2^i microseconds, the last bucket counts everything longer
+	static final int BUCKET_COUNT = 32;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param nanos Duration in nanoseconds
+	 */
+	public void record(long nanos) {
+		if(nanos < 0) {
+			nanos = 0;
+		}
+		long micros = nanos / 1000;
+		int bucket = 64 - Long.numberOfLeadingZeros(micros);
+		buckets.incrementAndGet(Math.min(bucket, BUCKET_COUNT - 1));
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+
+		long current;
+		while(nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+			// Retry until the maximum is updated or a longer duration was recorded
+		}
+	}
+
+	/**
+	 * Discard all recorded durations. Durations recorded at the same time may be partly kept.
+	 */
+	public void reset() {
+		for(int i = 0; i < BUCKET_COUNT; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return Sum of all recorded durations in nanoseconds
+	 */
+	public long getTotal() {
+		return total.get();
+	}
+
+	/**
+	 * @return Longest recorded duration in nanoseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @param bucket Index of the bucket
+	 * @return Number of durations recorded in the bucket
+	 */
+	public long getBucketCount(int bucket) {
+		return buckets.get(bucket);
+	}
+
+	/**
+	 * @param bucket Index of the bucket
+	 * @return Exclusive upper bound of the bucket in microseconds, or Long.MAX_VALUE for the last bucket
+	 */
+	public static long getBucketBound(int bucket) {
+		return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+	}
+
+	/**
+	 * Estimate a percentile, which is accurate up to a factor two
+	 *
+	 * @param percentile Percentile between 0 and 100
+	 * @return Upper bound of the bucket containing the percentile in nanoseconds, limited by the longest duration
+	 */
+	public long getPercentile(double percentile) {
+		long n = count.get();
+		if(n == 0) {
+			return 0;
+		}
+
+		long target = (long) Math.ceil(percentile / 100.0 * n);
+		long seen = 0;
+		for(int i = 0; i < BUCKET_COUNT; i++) {
+			seen += buckets.get(i);
+			if(seen >= target) {
+				long bound = getBucketBound(i);
+				return bound == Long.MAX_VALUE ? max.get() : Math.min(bound * 1000, max.get());
+			}
+		}
+		return max.get();
+	}
+}
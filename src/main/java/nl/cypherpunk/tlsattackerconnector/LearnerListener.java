@@ -0,0 +1,152 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.ProtocolFamily;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Accepts learner connections on a TCP port or on a Unix domain socket. Unix domain sockets are only available on
+ * Java 16 and later, so they are looked up reflectively. TLS-Attacker 3.6.0 does not run on Java 17 and later, so for
+ * now the connector itself can only use TCP.
+ */
+public class LearnerListener implements Closeable {
+	private final ServerSocket serverSocket;
+	private final ServerSocketChannel serverChannel;
+	private final Path socketPath;
+
+	/**
+	 * A connection with a learner
+	 */
+	public static class Connection implements Closeable {
+		private final Closeable connection;
+		private final InputStream in;
+		private final OutputStream out;
+		private final String name;
+
+		Connection(Closeable connection, InputStream in, OutputStream out, String name) {
+			this.connection = connection;
+			this.in = in;
+			this.out = out;
+			this.name = name;
+		}
+
+		public InputStream getInputStream() {
+			return in;
+		}
+
+		public OutputStream getOutputStream() {
+			return out;
+		}
+
+		@Override
+		public void close() throws IOException {
+			connection.close();
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	private LearnerListener(ServerSocket serverSocket, ServerSocketChannel serverChannel, Path socketPath) {
+		this.serverSocket = serverSocket;
+		this.serverChannel = serverChannel;
+		this.socketPath = socketPath;
+	}
+
+	/**
+	 * Listen on a TCP port
+	 *
+	 * @param port Port to listen on
+	 * @return The listener
+	 * @throws IOException If the port cannot be bound
+	 */
+	public static LearnerListener listen(int port) throws IOException {
+		return new LearnerListener(new ServerSocket(port), null, null);
+	}
+
+	/**
+	 * Listen on a Unix domain socket. A socket file left behind by a previous run is replaced, and the file is removed
+	 * again when the listener is closed.
+	 *
+	 * @param path Path of the socket file
+	 * @return The listener
+	 * @throws IOException If Unix domain sockets are not supported or the socket cannot be bound
+	 */
+	public static LearnerListener listenUnix(String path) throws IOException {
+		Path socketPath = Paths.get(path);
+		if(Files.exists(socketPath, LinkOption.NOFOLLOW_LINKS)) {
+			if(!Files.readAttributes(socketPath, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isOther()) {
+				throw new IOException(path + " exists and is not a socket");
+			}
+			Files.delete(socketPath);
+		}
+
+		SocketAddress address;
+		ServerSocketChannel channel;
+		try {
+			address = (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class).invoke(null, socketPath);
+			ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+			channel = (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, unix);
+		} catch(InvocationTargetException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		} catch(ReflectiveOperationException | IllegalArgumentException e) {
+			throw new IOException("Unix domain sockets are not supported by this JVM, Java 16 or later is required");
+		}
+
+		try {
+			channel.bind(address);
+		} catch(IOException e) {
+			channel.close();
+			throw e;
+		}
+		return new LearnerListener(null, channel, socketPath);
+	}
+
+	/**
+	 * Wait for the next learner to connect
+	 *
+	 * @return The connection with the learner
+	 * @throws IOException
+	 */
+	public Connection accept() throws IOException {
+		if(serverSocket != null) {
+			Socket socket = serverSocket.accept();
+			socket.setTcpNoDelay(true);
+			return new Connection(socket, socket.getInputStream(), socket.getOutputStream(), socket.getRemoteSocketAddress().toString());
+		}
+		SocketChannel channel = serverChannel.accept();
+		return new Connection(channel, Channels.newInputStream(channel), Channels.newOutputStream(channel), socketPath.toString());
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(serverSocket != null) {
+			serverSocket.close();
+		} else {
+			serverChannel.close();
+			Files.deleteIfExists(socketPath);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return serverSocket != null ? "port " + serverSocket.getLocalPort() : "socket " + socketPath;
+	}
+}
@@ -0,0 +1,82 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Session for a learner running in the same JVM as the connector. It answers input symbols exactly like a learner
+ * connected over a socket, including the query cache, journal and metrics, without the socket and text protocol in
+ * between. Open a session with {@link TLSAttackerConnector#openSession()}, for example:
+ *
+ * <pre>
+ * TLSAttackerConnector connector = TLSAttackerConnector.create("--targetPort", "4433", "--queryCache");
+ * try(LearnerSession session = connector.openSession()) {
+ *     session.reset();
+ *     String output = session.step("ClientHello");
+ * }
+ * connector.shutdown();
+ * </pre>
+ *
+ * A session must only be used by one thread at a time. Open a session for every thread to run queries concurrently.
+ */
+public class LearnerSession implements AutoCloseable {
+	private final ConnectorSession session;
+
+	LearnerSession(ConnectorSession session) {
+		this.session = session;
+	}
+
+	/**
+	 * Bring the target back to its initial state. With the query cache enabled, resetting the connection is deferred
+	 * until an input symbol has to be executed.
+	 *
+	 * @throws Exception
+	 */
+	public void reset() throws Exception {
+		session.processInput(TLSAttackerConnector.SYMBOL_RESET);
+	}
+
+	/**
+	 * Process a single input symbol
+	 *
+	 * @param inputSymbol Name of a loaded message, or RESET
+	 * @return The output, in the same format as sent to learners connected over a socket
+	 * @throws Exception If the symbol is unknown or the target cannot be reached
+	 */
+	public String step(String inputSymbol) throws Exception {
+		return session.processInput(inputSymbol);
+	}
+
+	/**
+	 * Process a complete query starting from the initial state
+	 *
+	 * @param word Input symbols, without a leading RESET
+	 * @return The outputs of all input symbols
+	 * @throws Exception If a symbol is unknown or the target cannot be reached
+	 */
+	public List<String> runWord(List<String> word) throws Exception {
+		return session.runWord(word);
+	}
+
+	/**
+	 * Process a complete query starting from the initial state
+	 *
+	 * @param word Input symbols, without a leading RESET
+	 * @return The outputs of all input symbols
+	 * @throws Exception If a symbol is unknown or the target cannot be reached
+	 */
+	public List<String> runWord(String ... word) throws Exception {
+		return session.runWord(Arrays.asList(word));
+	}
+
+	/**
+	 * Close the connections of this session
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		session.shutdown();
+	}
+}
@@ -0,0 +1,235 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Uses the loaded messages to put load on the target. A number of concurrent sessions repeatedly execute words
+ * picked at random from a list, optionally limited to a total rate, for a fixed duration. The throughput, the latency
+ * of complete words and the received alerts and errors are reported.
+ */
+public class LoadGenerator {
+	// Interval in ms at which progress is printed
+	static final long REPORT_INTERVAL = 5000;
+	static final String ALERT_PREFIX = "ALERT_";
+
+	private final TLSAttackerConnector connector;
+	private final List<List<String>> words;
+	private final int sessions;
+	private final double rate;
+	private final long duration;
+
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LongAdder completed = new LongAdder();
+	private final LongAdder symbols = new LongAdder();
+	// Received alerts and the closed connections by name, and errors by type
+	private final Map<String, LongAdder> alerts = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+	private final AtomicLong nextSlot = new AtomicLong();
+	private volatile long start;
+	private volatile long end;
+
+	/**
+	 * @param connector Connector providing the settings and the loaded messages
+	 * @param words Words to execute, each without RESET
+	 * @param sessions Number of concurrent sessions
+	 * @param rate Maximum number of words started per second by all sessions together, or 0 for no limit
+	 * @param duration Time in seconds to generate load for
+	 */
+	public LoadGenerator(TLSAttackerConnector connector, List<List<String>> words, int sessions, double rate, long duration) {
+		this.connector = connector;
+		this.words = words;
+		this.sessions = sessions;
+		this.rate = rate;
+		this.duration = duration;
+	}
+
+	/**
+	 * Parse words of input symbols separated by spaces
+	 *
+	 * @param wordStrings Words to parse
+	 * @param messages Names of the loaded messages
+	 * @return The parsed words
+	 * @throws IllegalArgumentException If a word is empty or contains a symbol that is not loaded
+	 */
+	public static List<List<String>> parseWords(List<String> wordStrings, String[] messages) {
+		List<String> known = Arrays.asList(messages);
+		List<List<String>> words = new ArrayList<>();
+		for(String wordString: wordStrings) {
+			List<String> word = new ArrayList<>();
+			for(String symbol: wordString.trim().split("\\s+")) {
+				if(symbol.isEmpty() || symbol.equals(TLSAttackerConnector.SYMBOL_RESET)) {
+					continue;
+				}
+				if(!known.contains(symbol)) {
+					throw new IllegalArgumentException("Unknown input symbol: " + symbol);
+				}
+				word.add(symbol);
+			}
+			if(word.isEmpty()) {
+				throw new IllegalArgumentException("Empty word: " + wordString);
+			}
+			words.add(word);
+		}
+		return words;
+	}
+
+	/**
+	 * Generate load until the duration has passed
+	 *
+	 * @return Number of words that could not be executed
+	 * @throws Exception
+	 */
+	public long run() throws Exception {
+		System.out.println(String.format("Generating load with %d sessions executing %d different words for %d s%s", sessions, words.size(), duration,
+				rate > 0 ? String.format(" at %.1f words/s", rate) : ""));
+		start = System.nanoTime();
+		end = start + TimeUnit.SECONDS.toNanos(duration);
+
+		ExecutorService executor = ConnectorExecutors.create(connector.executorType, sessions, "load");
+		try {
+			List<Future<?>> workers = new ArrayList<>();
+			for(int i = 0; i < sessions; i++) {
+				workers.add(executor.submit(() -> {
+					generate();
+					return null;
+				}));
+			}
+
+			long lastCompleted = 0;
+			long lastReport = System.nanoTime();
+			while(System.nanoTime() < end) {
+				Thread.sleep(Math.min(REPORT_INTERVAL, Math.max(1, TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime()))));
+				long now = System.nanoTime();
+				long count = completed.sum();
+				System.out.println(String.format("Load: %.1f words/s, word p50 %.1f ms p99 %.1f ms, %d errors",
+						(count - lastCompleted) * 1e9 / Math.max(1, now - lastReport), latency.getPercentile(50) / 1e6,
+						latency.getPercentile(99) / 1e6, getCount(errors)));
+				lastCompleted = count;
+				lastReport = now;
+			}
+			for(Future<?> worker: workers) {
+				worker.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		printReport();
+		return getCount(errors);
+	}
+
+	private void generate() {
+		ConnectorSession session = null;
+		try {
+			while(true) {
+				// With a rate, every word gets a slot in a fixed schedule shared by all sessions. The latency is measured
+				// from the slot, so a target that falls behind the schedule is not hidden by sessions waiting for it.
+				long wordStart;
+				if(rate > 0) {
+					wordStart = start + (long) (nextSlot.getAndIncrement() * 1e9 / rate);
+					if(wordStart >= end) {
+						break;
+					}
+					long wait = wordStart - System.nanoTime();
+					if(wait > 0) {
+						TimeUnit.NANOSECONDS.sleep(wait);
+					}
+				} else {
+					wordStart = System.nanoTime();
+					if(wordStart >= end) {
+						break;
+					}
+				}
+
+				List<String> word = words.get(ThreadLocalRandom.current().nextInt(words.size()));
+				try {
+					if(session == null) {
+						session = connector.createSession();
+					}
+					List<String> outputs = session.runWord(word);
+					latency.record(System.nanoTime() - wordStart);
+					completed.increment();
+					symbols.add(word.size());
+					countAlerts(outputs);
+				} catch(Exception e) {
+					count(errors, e.getClass().getSimpleName());
+					// Start over with a new session, as the state of the current one is unknown
+					if(session != null) {
+						try {
+							session.shutdown();
+						} catch(Exception closeException) {
+							// The session is not used anymore
+						}
+						session = null;
+					}
+				}
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if(session != null) {
+				try {
+					session.shutdown();
+				} catch(Exception e) {
+					// The session is not used anymore
+				}
+			}
+		}
+	}
+
+	private void countAlerts(List<String> outputs) {
+		for(int i = 0; i < outputs.size(); i++) {
+			String output = outputs.get(i);
+			if(output.indexOf(ALERT_PREFIX) < 0 && output.indexOf(TLSAttackerConnector.SYMBOL_CONNECTION_CLOSED) < 0) {
+				continue;
+			}
+			for(String message: output.split("\\|")) {
+				if(message.startsWith(ALERT_PREFIX) || message.equals(TLSAttackerConnector.SYMBOL_CONNECTION_CLOSED)) {
+					count(alerts, message);
+				}
+			}
+		}
+	}
+
+	private static void count(Map<String, LongAdder> counts, String name) {
+		counts.computeIfAbsent(name, k -> new LongAdder()).increment();
+	}
+
+	private static long getCount(Map<String, LongAdder> counts) {
+		long total = 0;
+		for(LongAdder count: counts.values()) {
+			total += count.sum();
+		}
+		return total;
+	}
+
+	private void printReport() {
+		double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+		System.out.println("========================================");
+		System.out.println(String.format("Words: %d in %.1f s (%.1f words/s, %.1f symbols/s)", completed.sum(), seconds, completed.sum() / seconds, symbols.sum() / seconds));
+		System.out.println(String.format("Word latency: p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, p99.9 %.1f ms, max %.1f ms",
+				latency.getPercentile(50) / 1e6, latency.getPercentile(90) / 1e6, latency.getPercentile(99) / 1e6,
+				latency.getPercentile(99.9) / 1e6, latency.getMax() / 1e6));
+		System.out.println("Alerts and closed connections:");
+		for(Map.Entry<String, LongAdder> alert: new TreeMap<>(alerts).entrySet()) {
+			System.out.println("  " + alert.getKey() + " " + alert.getValue().sum());
+		}
+		System.out.println("Errors: " + getCount(errors));
+		for(Map.Entry<String, LongAdder> error: new TreeMap<>(errors).entrySet()) {
+			System.out.println("  " + error.getKey() + " " + error.getValue().sum());
+		}
+		System.out.println(connector.socketSettings.getStatistics());
+		System.out.println("========================================");
+	}
+}
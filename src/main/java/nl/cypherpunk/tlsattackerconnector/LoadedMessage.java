@@ -0,0 +1,43 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.rub.nds.tlsattacker.core.workflow.WorkflowTrace;
+
+/**
+ * Message loaded from the message directory. Executing a trace modifies it, so every session needs its own copy of
+ * the trace. The trace parsed by the loader is handed out as the first copy, further copies are parsed from the
+ * source.
+ */
+public class LoadedMessage {
+	private final byte[] source;
+	// Trace parsed by the loader that was not handed out yet, null if the file was not parsed when loading
+	private final AtomicReference<WorkflowTrace> parsed;
+
+	/**
+	 * @param source Contents of the message file
+	 * @param parsed Trace parsed from the source, which should not be used elsewhere, or null
+	 */
+	LoadedMessage(byte[] source, WorkflowTrace parsed) {
+		this.source = source;
+		this.parsed = new AtomicReference<>(parsed);
+	}
+
+	/**
+	 * Get a copy of the trace of this message for a single session
+	 *
+	 * @return A trace that is not used elsewhere
+	 * @throws Exception If the source cannot be parsed
+	 */
+	public WorkflowTrace copy() throws Exception {
+		WorkflowTrace trace = parsed.getAndSet(null);
+		return trace != null ? trace : TLSAttackerConnector.parseMessage(source);
+	}
+
+	/**
+	 * @return Contents of the message file, which should not be modified
+	 */
+	public byte[] getSource() {
+		return source;
+	}
+}
@@ -0,0 +1,192 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import de.rub.nds.tlsattacker.core.workflow.WorkflowTrace;
+import de.rub.nds.tlsattacker.core.workflow.WorkflowTraceSerializer;
+
+/**
+ * Loads the messages in a directory, parsing the files concurrently to check that they contain a valid workflow trace.
+ * The parsed traces are kept, so the first session using a message does not have to parse it again. When the messages
+ * are reloaded, files that did not change are not parsed again.
+ *
+ * The directory can be watched for changes, in which case the messages are reloaded and passed on as a new map.
+ * Messages that did not change are the same objects as in the previous map, so users can tell which messages changed
+ * by comparing them.
+ */
+public class MessageLoader {
+	// Time in ms to wait for further changes before reloading, as editors often write a file in multiple steps
+	static final long RELOAD_DELAY = 200;
+
+	private final File dir;
+	private final int threads;
+	private Map<String, LoadedMessage> current = Collections.emptyMap();
+
+	private final AtomicLong parsed = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+
+	/**
+	 * @param dir Directory containing the messages, one per file with the xml extension
+	 * @param threads Number of files parsed concurrently
+	 */
+	public MessageLoader(File dir, int threads) {
+		this.dir = dir;
+		this.threads = threads;
+	}
+
+	/**
+	 * Load all messages in the directory
+	 *
+	 * @return The messages by name
+	 * @throws Exception If the directory cannot be read or a file does not contain a valid workflow trace
+	 */
+	public synchronized Map<String, LoadedMessage> load() throws Exception {
+		if(!dir.isDirectory()) {
+			throw new Exception(dir.getPath() + " is not a valid directory");
+		}
+
+		// Get a list of all *.xml files in the directory
+		File[] files = dir.listFiles((d, name) -> name.toLowerCase().endsWith(".xml"));
+		if(files == null) {
+			throw new Exception(dir.getPath() + " could not be read");
+		}
+
+		ExecutorService executor = ConnectorExecutors.create(ExecutorType.FIXED, Math.max(1, Math.min(threads, files.length)), "message-loader");
+		List<Future<LoadedMessage>> results = new ArrayList<>();
+		try {
+			for(File file: files) {
+				LoadedMessage previous = current.get(getName(file));
+				results.add(executor.submit(() -> readMessage(file, previous)));
+			}
+
+			Map<String, LoadedMessage> messages = new HashMap<>();
+			for(int i = 0; i < files.length; i++) {
+				try {
+					messages.put(getName(files[i]), results.get(i).get());
+				} catch(ExecutionException e) {
+					throw new Exception("Could not load message " + files[i].getPath() + ": " + e.getCause(), e.getCause());
+				}
+			}
+
+			current = Collections.unmodifiableMap(messages);
+		} finally {
+			executor.shutdownNow();
+		}
+		return current;
+	}
+
+	/**
+	 * Strip .xml from the end of a file name to get the message name
+	 */
+	private static String getName(File file) {
+		return file.getName().substring(0, file.getName().length() - 4);
+	}
+
+	/**
+	 * Read a message, keeping the previous message if the file did not change
+	 */
+	private LoadedMessage readMessage(File file, LoadedMessage previous) throws Exception {
+		byte[] source = Files.readAllBytes(file.toPath());
+		if(previous != null && Arrays.equals(previous.getSource(), source)) {
+			skipped.incrementAndGet();
+			return previous;
+		}
+
+		WorkflowTrace trace = WorkflowTraceSerializer.read(new ByteArrayInputStream(source));
+		if(trace == null) {
+			throw new Exception("No workflow trace found");
+		}
+		parsed.incrementAndGet();
+		return new LoadedMessage(source, trace);
+	}
+
+	/**
+	 * Watch the directory in the background and reload the messages when a file changes. If a changed file cannot be
+	 * loaded, the error is reported and the previous messages are kept.
+	 *
+	 * @param listener Called with the new messages after every reload
+	 * @throws IOException
+	 */
+	public void startWatching(Consumer<Map<String, LoadedMessage>> listener) throws IOException {
+		WatchService watchService = FileSystems.getDefault().newWatchService();
+		dir.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+		Thread watcher = new Thread(() -> {
+			try {
+				while(true) {
+					WatchKey key = watchService.take();
+					boolean changed = false;
+					do {
+						for(WatchEvent<?> event: key.pollEvents()) {
+							Object context = event.context();
+							if(event.kind() == StandardWatchEventKinds.OVERFLOW
+									|| (context instanceof Path && context.toString().toLowerCase().endsWith(".xml"))) {
+								changed = true;
+							}
+						}
+						key.reset();
+						// Collect the events of further changes that follow shortly
+					} while((key = watchService.poll(RELOAD_DELAY, TimeUnit.MILLISECONDS)) != null);
+
+					if(!changed) {
+						continue;
+					}
+					try {
+						Map<String, LoadedMessage> previous = current;
+						Map<String, LoadedMessage> messages = load();
+						if(isChanged(previous, messages)) {
+							listener.accept(messages);
+						}
+					} catch(Exception e) {
+						System.err.println("Could not reload messages, keeping the previous messages: " + e.getMessage());
+					}
+				}
+			} catch(InterruptedException | ClosedWatchServiceException e) {
+				// Stop watching
+			}
+		}, "message-watcher");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	/**
+	 * Check whether messages were added, removed or changed, relying on unchanged messages being the same objects
+	 */
+	private static boolean isChanged(Map<String, LoadedMessage> previous, Map<String, LoadedMessage> messages) {
+		if(!previous.keySet().equals(messages.keySet())) {
+			return true;
+		}
+		for(Map.Entry<String, LoadedMessage> entry: messages.entrySet()) {
+			if(previous.get(entry.getKey()) != entry.getValue()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public synchronized String getStatistics() {
+		return String.format("Messages: %d loaded, %d parsed, %d unchanged files not parsed again", current.size(), parsed.get(), skipped.get());
+	}
+}
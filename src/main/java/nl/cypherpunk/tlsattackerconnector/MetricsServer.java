@@ -0,0 +1,56 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Minimal HTTP server exposing the metrics of the connector at /metrics in the Prometheus text format. It only
+ * listens on the loopback interface.
+ */
+public class MetricsServer {
+	static final String PATH = "/metrics";
+
+	private final ConnectorMetrics metrics;
+	private HttpServer server;
+
+	public MetricsServer(ConnectorMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Start serving the metrics in a background thread
+	 *
+	 * @param port Port to listen on
+	 * @throws IOException
+	 */
+	public void start(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext(PATH, this::handle);
+		server.setExecutor(ConnectorExecutors.create(ExecutorType.FIXED, 1, "metrics-http"));
+		server.start();
+	}
+
+	public void stop() {
+		if(server != null) {
+			server.stop(0);
+		}
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		StringBuilder builder = new StringBuilder();
+		metrics.writePrometheus(builder);
+		byte[] body = builder.toString().getBytes(StandardCharsets.UTF_8);
+
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+		exchange.sendResponseHeaders(200, body.length);
+		try(OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+}
@@ -0,0 +1,319 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import de.rub.nds.tlsattacker.transport.tcp.ClientTcpTransportHandler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transport handler using a non-blocking SocketChannel and a Selector. Data is read in bulk into pooled buffers and
+ * copied once into the array that is handed to TLS-Attacker.
+ */
+public class NioTransportHandler extends ClientTcpTransportHandler implements ConnectorTransport {
+	private ReceiveMode receiveMode = ReceiveMode.TIMEOUT;
+	private long quietTime = 20;
+	private SocketSettings socketSettings = new SocketSettings();
+	private final FlightDetector flightDetector = new FlightDetector();
+	private final ByteBufferPool bufferPool;
+	// Buffers holding the response that is currently being received
+	private final List<ByteBuffer> receiveBuffers = new ArrayList<>();
+
+	private SocketChannel channel;
+	private Selector selector;
+	private boolean inputClosed = false;
+	private long responseStart = -1;
+	private long responseLatency = -1;
+	private long fetchTime = 0;
+	private long bytesReceived = 0;
+	private long bytesSent = 0;
+	private RecordTiming recordTiming;
+	private TargetReplicas.Replica replica;
+	// Set when the last fetch of the current response returned a flight
+	private boolean flightReturned = false;
+
+	public NioTransportHandler(long timeout, String hostname, int port, boolean directBuffers) throws SocketException {
+		super(timeout, hostname, port);
+		bufferPool = ByteBufferPool.getShared(directBuffers);
+	}
+
+	@Override
+	public void initialize() throws IOException {
+		// Connect in blocking mode, so the connect timeout of the socket can be used
+		socketSettings.connect(() -> {
+			channel = SocketChannel.open();
+			return channel.socket();
+		}, hostname, port, (int) connectionTimeout);
+		channel.socket().setTcpNoDelay(true);
+		channel.configureBlocking(false);
+
+		selector = Selector.open();
+		channel.register(selector, SelectionKey.OP_READ);
+		socket = channel.socket();
+
+		// Reads are handled by fetchData, writes are passed directly to the channel
+		setStreams(new PushbackInputStream(new ByteArrayInputStream(new byte[0])), new ChannelOutputStream());
+	}
+
+	@Override
+	public byte[] fetchData() throws IOException {
+		if(isClosed()) {
+			return new byte[0];
+		}
+
+		// TLS-Attacker keeps fetching until nothing is returned. If the previous fetch of the same response returned a
+		// complete flight, only data that is already available is returned. After an incomplete flight or an alert,
+		// only data that arrives within the quiet time is returned, so a peer closing the connection is still noticed.
+		long firstWait = timeout;
+		if(flightReturned) {
+			firstWait = flightDetector.isFlightComplete() && !flightDetector.isAlertReceived() ? 0 : quietTime;
+			flightReturned = false;
+		}
+		flightDetector.startFlight();
+		long start = System.nanoTime();
+		long deadline = System.currentTimeMillis() + firstWait;
+		int received = 0;
+
+		try {
+			while(true) {
+				// First drain everything that is already available
+				received += readAvailable();
+				if(received > 0 && responseStart >= 0 && responseLatency < 0) {
+					responseLatency = System.nanoTime() - responseStart;
+				}
+				if(inputClosed) {
+					// Properly close the socket if the end of the stream was reached
+					closeClientConnection();
+					break;
+				}
+
+				long wait;
+				if(received == 0) {
+					wait = deadline - System.currentTimeMillis();
+					if(wait <= 0) {
+						break;
+					}
+				} else if(receiveMode == ReceiveMode.TIMEOUT) {
+					// Return whatever was available as soon as something arrived
+					break;
+				} else if(flightDetector.isFlightComplete()) {
+					break;
+				} else if(flightDetector.isParseable() && !flightDetector.isAtRecordBoundary()) {
+					// Part of a record is still on its way
+					wait = timeout;
+				} else {
+					wait = quietTime;
+				}
+
+				// A timeout of 0 would block forever
+				if(selector.select(Math.max(1, wait)) == 0) {
+					break;
+				}
+				selector.selectedKeys().clear();
+			}
+
+			bytesReceived += received;
+			flightReturned = receiveMode == ReceiveMode.FLIGHT && received > 0;
+			return collectReceived(received);
+		} finally {
+			fetchTime += System.nanoTime() - start;
+			for(ByteBuffer buffer: receiveBuffers) {
+				bufferPool.release(buffer);
+			}
+			receiveBuffers.clear();
+		}
+	}
+
+	/**
+	 * Read all data that is currently available on the channel into the receive buffers
+	 *
+	 * @return Number of bytes read
+	 * @throws IOException
+	 */
+	private int readAvailable() throws IOException {
+		int total = 0;
+
+		while(true) {
+			ByteBuffer buffer;
+			if(receiveBuffers.isEmpty() || !receiveBuffers.get(receiveBuffers.size() - 1).hasRemaining()) {
+				buffer = bufferPool.acquire();
+				receiveBuffers.add(buffer);
+			} else {
+				buffer = receiveBuffers.get(receiveBuffers.size() - 1);
+			}
+
+			int start = buffer.position();
+			int read = channel.read(buffer);
+			if(read == -1) {
+				inputClosed = true;
+				return total;
+			}
+			if(read == 0) {
+				return total;
+			}
+
+			long arrival = recordTiming != null ? System.nanoTime() : 0;
+			ByteBuffer view = buffer.duplicate();
+			view.flip();
+			view.position(start);
+			int completed = flightDetector.getCompletedRecords();
+			flightDetector.update(view);
+			if(recordTiming != null) {
+				// Data that cannot be parsed as records is timed as a single record
+				recordTiming.received(arrival, flightDetector.isParseable() ? flightDetector.getCompletedRecords() - completed : 1);
+			}
+			total += read;
+		}
+	}
+
+	private byte[] collectReceived(int received) {
+		byte[] data = new byte[received];
+		int offset = 0;
+		for(ByteBuffer buffer: receiveBuffers) {
+			buffer.flip();
+			int length = buffer.remaining();
+			buffer.get(data, offset, length);
+			offset += length;
+		}
+		return data;
+	}
+
+	@Override
+	public boolean isClosed() throws IOException {
+		return channel == null || !channel.isOpen() || inputClosed;
+	}
+
+	@Override
+	public boolean isStale() throws IOException {
+		if(isClosed()) {
+			return true;
+		}
+		
+		ByteBuffer buffer = bufferPool.acquire();
+		try {
+			// Any data or the end of the stream means the connection can no longer be used for a new session
+			return channel.read(buffer) != 0;
+		} finally {
+			bufferPool.release(buffer);
+		}
+	}
+
+	@Override
+	public void closeConnection() throws IOException {
+		if(channel == null) {
+			throw new IOException("Transport handler is not initialised");
+		}
+		selector.close();
+		socketSettings.prepareClose(channel.socket());
+		channel.close();
+	}
+
+	@Override
+	public void closeClientConnection() throws IOException {
+		closeConnection();
+	}
+
+	@Override
+	public void startResponse() {
+		flightReturned = false;
+		responseStart = System.nanoTime();
+		responseLatency = -1;
+	}
+
+	@Override
+	public long getResponseLatency() {
+		return responseLatency;
+	}
+
+	@Override
+	public long getFetchTime() {
+		return fetchTime;
+	}
+
+	@Override
+	public long getBytesReceived() {
+		return bytesReceived;
+	}
+
+	@Override
+	public long getBytesSent() {
+		return bytesSent;
+	}
+
+	@Override
+	public void setReceiveMode(ReceiveMode receiveMode) {
+		this.receiveMode = receiveMode;
+	}
+
+	@Override
+	public void setQuietTime(long quietTime) {
+		this.quietTime = quietTime;
+	}
+
+	@Override
+	public void setSocketSettings(SocketSettings socketSettings) {
+		this.socketSettings = socketSettings;
+	}
+
+	@Override
+	public void setRecordTiming(RecordTiming recordTiming) {
+		this.recordTiming = recordTiming;
+	}
+
+	@Override
+	public void setReplica(TargetReplicas.Replica replica) {
+		this.replica = replica;
+	}
+
+	@Override
+	public TargetReplicas.Replica getReplica() {
+		return replica;
+	}
+
+	/**
+	 * Writes directly to the non-blocking channel, waiting for the channel to become writable when its send buffer is
+	 * full
+	 */
+	private class ChannelOutputStream extends OutputStream {
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] data, int offset, int length) throws IOException {
+			long start = recordTiming != null ? System.nanoTime() : 0;
+			ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+			while(buffer.hasRemaining()) {
+				if(channel.write(buffer) == 0) {
+					waitWritable();
+				}
+			}
+			bytesSent += length;
+			if(recordTiming != null) {
+				recordTiming.sent(start, System.nanoTime());
+			}
+		}
+
+		private void waitWritable() throws IOException {
+			SelectionKey key = channel.keyFor(selector);
+			key.interestOps(SelectionKey.OP_WRITE);
+			try {
+				if(selector.select(timeout) == 0) {
+					throw new IOException("Timeout while sending data");
+				}
+				selector.selectedKeys().clear();
+			} finally {
+				key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+	}
+}
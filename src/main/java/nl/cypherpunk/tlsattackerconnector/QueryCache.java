@@ -0,0 +1,346 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prefix tree of the outputs of executed queries. Every node corresponds to a sequence of input symbols since the
+ * last reset and stores the output of the last symbol. Once an output ends with a closed connection (for all targets
+ * with differential execution), all longer sequences will also result in a closed connection, so these are answered
+ * without storing them.
+ *
+ * The tree can be saved to and loaded from a compact binary file, which is bound to a key describing the target and
+ * the configuration of the connector.
+ */
+public class QueryCache {
+	static final int FILE_MAGIC = 0x544c5143; // "TLQC"
+	static final int FILE_VERSION = 1;
+	// Rough estimates of the memory used by a node and by a child entry, used for reporting only
+	static final int NODE_SIZE_ESTIMATE = 64;
+	static final int ENTRY_SIZE_ESTIMATE = 48;
+
+	private String key;
+	private final Node root = new Node();
+	// Symbols and outputs are shared between nodes, as most nodes have one of only a few different outputs
+	private final HashMap<String, String> strings = new HashMap<>();
+	private long nodes = 1;
+	private long entries = 0;
+	private boolean modified = false;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param key Key describing the target and configuration, used to make sure a cache file belongs to this setup
+	 */
+	public QueryCache(String key) {
+		this.key = key;
+	}
+
+	/**
+	 * Look up the output of the last symbol of a sequence of input symbols
+	 *
+	 * @param word Input symbols since the last reset
+	 * @return The output of the last symbol, or null if it is not known
+	 */
+	public synchronized String lookup(List<String> word) {
+		Node node = root;
+		int i = 0;
+		for(String symbol: word) {
+			if(node != root && isClosed(node.output)) {
+				// The connection was already closed, so every following symbol will find it closed as well
+				hits.incrementAndGet();
+				return TLSAttackerConnector.SYMBOL_CONNECTION_CLOSED;
+			}
+			node = node.children == null ? null : node.children.get(symbol);
+			if(node == null) {
+				break;
+			}
+			i++;
+		}
+
+		if(node == null || i < word.size() || node.output == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return node.output;
+	}
+
+	/**
+	 * Store the output of the last symbol of a sequence of input symbols. The outputs of all prefixes should already
+	 * be stored.
+	 *
+	 * @param word Input symbols since the last reset
+	 * @param output Output of the last symbol
+	 * @return The output that was stored before, if it differs from the provided output
+	 */
+	public synchronized String store(List<String> word, String output) {
+		Node node = root;
+		for(String symbol: word) {
+			if(node != root && isClosed(node.output)) {
+				// Longer sequences are not stored once the connection is closed
+				return null;
+			}
+			if(node.children == null) {
+				node.children = new HashMap<>(4);
+			}
+			Node child = node.children.get(symbol);
+			if(child == null) {
+				child = new Node();
+				node.children.put(intern(symbol), child);
+				nodes++;
+			}
+			node = child;
+		}
+
+		String previous = node.output;
+		if(previous == null) {
+			entries++;
+		}
+		if(!output.equals(previous)) {
+			node.output = intern(output);
+			modified = true;
+			// Everything after this node was based on the old output
+			if(isClosed(output) && node.children != null) {
+				for(Node child: node.children.values()) {
+					removeCounts(child);
+				}
+				node.children = null;
+			}
+		}
+		return previous == null || previous.equals(output) ? null : previous;
+	}
+
+	private String intern(String string) {
+		String interned = strings.get(string);
+		if(interned == null) {
+			strings.put(string, string);
+			interned = string;
+		}
+		return interned;
+	}
+
+	/**
+	 * @param output Output of an input symbol
+	 * @return True if the connection was closed. The combined output of differential execution is only closed if the
+	 *         connections to all targets were closed.
+	 */
+	static boolean isClosed(String output) {
+		if(output == null) {
+			return false;
+		}
+		if(output.indexOf(DifferentialSession.OUTPUT_SEPARATOR) < 0) {
+			return output.endsWith(TLSAttackerConnector.SYMBOL_CONNECTION_CLOSED);
+		}
+		for(String targetOutput: output.split(DifferentialSession.OUTPUT_SEPARATOR, -1)) {
+			if(!targetOutput.endsWith(TLSAttackerConnector.SYMBOL_CONNECTION_CLOSED)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void removeCounts(Node node) {
+		nodes--;
+		if(node.output != null) {
+			entries--;
+		}
+		if(node.children != null) {
+			for(Node child: node.children.values()) {
+				removeCounts(child);
+			}
+		}
+	}
+
+	/**
+	 * Load the cache from a file. Nothing is loaded if the file does not exist or belongs to a different key.
+	 *
+	 * @param file File to load from
+	 * @return True if the cache was loaded
+	 * @throws IOException
+	 */
+	public synchronized boolean load(File file) throws IOException {
+		if(!file.exists()) {
+			return false;
+		}
+
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if(in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION || !in.readUTF().equals(key)) {
+				return false;
+			}
+
+			int stringCount = in.readInt();
+			String[] stringTable = new String[stringCount];
+			for(int i = 0; i < stringCount; i++) {
+				stringTable[i] = intern(in.readUTF());
+			}
+
+			root.children = null;
+			nodes = 1;
+			entries = 0;
+			readNode(in, root, stringTable);
+			modified = false;
+			return true;
+		}
+	}
+
+	private void readNode(DataInputStream in, Node node, String[] strings) throws IOException {
+		int output = in.readInt();
+		if(output >= 0) {
+			node.output = strings[output];
+			entries++;
+		}
+		int childCount = in.readInt();
+		if(childCount > 0) {
+			node.children = new HashMap<>(Math.max(4, childCount * 2));
+		}
+		for(int i = 0; i < childCount; i++) {
+			String symbol = strings[in.readInt()];
+			Node child = new Node();
+			nodes++;
+			readNode(in, child, strings);
+			node.children.put(symbol, child);
+		}
+	}
+
+	/**
+	 * Save the cache to a file, if it was modified since it was loaded or last saved. The file is replaced
+	 * atomically, so an interrupted save does not corrupt an existing file.
+	 *
+	 * @param file File to save to
+	 * @throws IOException
+	 */
+	public synchronized void save(File file) throws IOException {
+		if(!modified) {
+			return;
+		}
+
+		// All symbols and outputs are stored once in a string table and referenced by index
+		Map<String, Integer> stringIndex = new HashMap<>();
+		List<String> stringTable = new ArrayList<>();
+		collectStrings(root, stringIndex, stringTable);
+
+		File tempFile = new File(file.getPath() + ".tmp");
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+			out.writeInt(FILE_MAGIC);
+			out.writeInt(FILE_VERSION);
+			out.writeUTF(key);
+			out.writeInt(stringTable.size());
+			for(String string: stringTable) {
+				out.writeUTF(string);
+			}
+			writeNode(out, root, stringIndex);
+		}
+
+		if(!tempFile.renameTo(file)) {
+			// Renaming over an existing file is not possible on every platform
+			file.delete();
+			if(!tempFile.renameTo(file)) {
+				throw new IOException("Could not write cache file " + file.getPath());
+			}
+		}
+		modified = false;
+	}
+
+	private static void collectStrings(Node node, Map<String, Integer> stringIndex, List<String> strings) {
+		if(node.output != null) {
+			addString(node.output, stringIndex, strings);
+		}
+		if(node.children != null) {
+			for(Map.Entry<String, Node> child: node.children.entrySet()) {
+				addString(child.getKey(), stringIndex, strings);
+				collectStrings(child.getValue(), stringIndex, strings);
+			}
+		}
+	}
+
+	private static void addString(String string, Map<String, Integer> stringIndex, List<String> strings) {
+		if(!stringIndex.containsKey(string)) {
+			stringIndex.put(string, strings.size());
+			strings.add(string);
+		}
+	}
+
+	private static void writeNode(DataOutputStream out, Node node, Map<String, Integer> stringIndex) throws IOException {
+		out.writeInt(node.output == null ? -1 : stringIndex.get(node.output));
+		if(node.children == null) {
+			out.writeInt(0);
+			return;
+		}
+		out.writeInt(node.children.size());
+		for(Map.Entry<String, Node> child: node.children.entrySet()) {
+			out.writeInt(stringIndex.get(child.getKey()));
+			writeNode(out, child.getValue(), stringIndex);
+		}
+	}
+
+	/**
+	 * Remove all entries and bind the cache to a new key, for example after the messages changed
+	 *
+	 * @param key Key describing the new target and configuration
+	 */
+	public synchronized void clear(String key) {
+		this.key = key;
+		root.output = null;
+		root.children = null;
+		strings.clear();
+		nodes = 1;
+		entries = 0;
+		modified = false;
+	}
+
+	public synchronized String getKey() {
+		return key;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public synchronized long getNodeCount() {
+		return nodes;
+	}
+
+	public synchronized long getEntryCount() {
+		return entries;
+	}
+
+	/**
+	 * @return Rough estimate of the memory used by the tree in bytes, not counting the shared strings
+	 */
+	public synchronized long getEstimatedMemory() {
+		return nodes * NODE_SIZE_ESTIMATE + (nodes - 1) * ENTRY_SIZE_ESTIMATE;
+	}
+
+	/**
+	 * @return A one line summary of the cache statistics
+	 */
+	public String getStatistics() {
+		long hitCount = hits.get();
+		long total = hitCount + misses.get();
+		double hitRate = total == 0 ? 0 : 100.0 * hitCount / total;
+		return String.format("Query cache: %d hits, %d misses (%.1f%% hit rate), %d entries, %d nodes, ~%d KiB",
+				hitCount, total - hitCount, hitRate, getEntryCount(), getNodeCount(), getEstimatedMemory() / 1024);
+	}
+
+	private static class Node {
+		String output;
+		HashMap<String, Node> children;
+	}
+}
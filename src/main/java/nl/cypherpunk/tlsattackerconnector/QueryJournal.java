@@ -0,0 +1,419 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only binary journal of every processed input symbol, with its output and the time it took. Entries are
+ * queued by the sessions and written by a background thread, so the sessions never wait for the disk unless the queue
+ * is full.
+ *
+ * Every time the journal is opened a segment is started, consisting of a header with the key of the setup, followed
+ * by entries. Symbols and outputs are written once per segment and then referenced by index, and all numbers are
+ * written as variable length integers, so an entry usually takes only a few bytes.
+ */
+public class QueryJournal {
+	static final int FILE_MAGIC = 0x544c514a; // "TLQJ"
+	static final int FILE_VERSION = 2;
+	// Oldest version that can still be read, which has no timing records
+	static final int MIN_FILE_VERSION = 1;
+	static final int BUFFER_SIZE = 65536;
+
+	// Types of the records in a journal
+	static final int RECORD_SEGMENT = 0;
+	static final int RECORD_STRING = 1;
+	static final int RECORD_STEP = 2;
+	static final int RECORD_TIMING = 3;
+
+	private final File file;
+	private final BlockingQueue<Step> queue;
+	private final DataOutputStream out;
+	private final ExecutorService writer;
+	private final long started = System.nanoTime();
+	private final Map<String, Integer> strings = new HashMap<>();
+	private volatile boolean closed = false;
+	private volatile IOException error;
+
+	private final AtomicLong steps = new AtomicLong();
+
+	/**
+	 * A processed input symbol
+	 */
+	public static class Step {
+		final int session;
+		final String input;
+		final String output;
+		final long offset;
+		final long duration;
+		// Send duration and record latencies in nanoseconds, or null if no timing was captured
+		final long[] timing;
+
+		Step(int session, String input, String output, long offset, long duration, long[] timing) {
+			this.session = session;
+			this.input = input;
+			this.output = output;
+			this.offset = offset;
+			this.duration = duration;
+			this.timing = timing;
+		}
+	}
+
+	/**
+	 * Receives the records of a journal while it is read
+	 */
+	private interface Reader {
+		void segment(String key);
+		void step(long session, String input, String output);
+		void timing(long[] timing);
+	}
+
+	/**
+	 * Input symbols processed from a reset state, with their outputs
+	 */
+	public static class Word {
+		final List<String> inputs = new ArrayList<>();
+		final List<String> outputs = new ArrayList<>();
+
+		public List<String> getInputs() {
+			return inputs;
+		}
+
+		public List<String> getOutputs() {
+			return outputs;
+		}
+	}
+
+	/**
+	 * Open a journal for appending, starting a new segment
+	 *
+	 * @param file File to append to, which is created if it does not exist
+	 * @param key Key describing the target and configuration
+	 * @param capacity Maximum number of entries waiting to be written
+	 * @throws IOException
+	 */
+	public QueryJournal(File file, String key, int capacity) throws IOException {
+		this.file = file;
+		queue = new ArrayBlockingQueue<>(capacity);
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), BUFFER_SIZE));
+		out.writeByte(RECORD_SEGMENT);
+		out.writeInt(FILE_MAGIC);
+		out.writeInt(FILE_VERSION);
+		out.writeUTF(key);
+		out.writeLong(System.currentTimeMillis());
+		out.flush();
+
+		writer = ConnectorExecutors.create(ExecutorType.FIXED, 1, "query-journal");
+		writer.execute(this::writeEntries);
+	}
+
+	/**
+	 * Queue a processed input symbol to be written. This only blocks if the queue is full.
+	 *
+	 * @param session Identifier of the session that processed the symbol
+	 * @param input Input symbol
+	 * @param output Output of the symbol
+	 * @param start Value of {@link System#nanoTime()} when processing started
+	 * @param duration Time in nanoseconds it took to process the symbol
+	 * @param timing Timing captured while executing the symbol, which is copied, or null
+	 */
+	public void record(int session, String input, String output, long start, long duration, RecordTiming timing) {
+		if(closed) {
+			return;
+		}
+		try {
+			queue.put(new Step(session, input, output, start - started, duration,
+					timing != null && timing.isSent() ? timing.toArray() : null));
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void writeEntries() {
+		List<Step> batch = new ArrayList<>();
+		try {
+			while(!closed || !queue.isEmpty()) {
+				Step step = queue.poll(100, TimeUnit.MILLISECONDS);
+				if(step == null) {
+					continue;
+				}
+				batch.add(step);
+				queue.drainTo(batch);
+				for(Step entry: batch) {
+					writeStep(entry);
+				}
+				batch.clear();
+				// Only flush once the queue is drained, so busy periods are written in large blocks
+				if(queue.isEmpty()) {
+					out.flush();
+				}
+			}
+			out.flush();
+		} catch(IOException e) {
+			error = e;
+			closed = true;
+			System.err.println("Could not write query journal: " + e.getMessage());
+		} catch(InterruptedException e) {
+			// The journal is closed
+		}
+	}
+
+	private void writeStep(Step step) throws IOException {
+		int input = writeString(step.input);
+		int output = writeString(step.output);
+		out.writeByte(RECORD_STEP);
+		writeVarLong(out, step.session);
+		writeVarLong(out, input);
+		writeVarLong(out, output);
+		writeVarLong(out, Math.max(0, step.offset) / 1000);
+		writeVarLong(out, Math.max(0, step.duration) / 1000);
+		// Timing always directly follows its step, so it needs no reference to it
+		if(step.timing != null) {
+			out.writeByte(RECORD_TIMING);
+			writeVarLong(out, step.timing.length);
+			for(long value: step.timing) {
+				writeVarLong(out, Math.max(0, value));
+			}
+		}
+		steps.incrementAndGet();
+	}
+
+	private int writeString(String string) throws IOException {
+		Integer index = strings.get(string);
+		if(index == null) {
+			index = strings.size();
+			strings.put(string, index);
+			out.writeByte(RECORD_STRING);
+			out.writeUTF(string);
+		}
+		return index;
+	}
+
+	/**
+	 * Write all queued entries and close the file
+	 *
+	 * @throws IOException If writing failed at any point
+	 */
+	public void close() throws IOException {
+		if(!closed) {
+			closed = true;
+			writer.shutdown();
+			try {
+				writer.awaitTermination(10, TimeUnit.SECONDS);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			out.close();
+		}
+		if(error != null) {
+			throw error;
+		}
+	}
+
+	public String getStatistics() {
+		return String.format("Query journal: %d entries written to %s (%d KiB), %d waiting", steps.get(), file.getPath(), file.length() / 1024, queue.size());
+	}
+
+	/**
+	 * Read the words of all sessions from a journal. Every word starts at a reset, and words that were processed
+	 * multiple times are included every time. A truncated last entry, for example after a crash, is ignored.
+	 *
+	 * @param file Journal to read
+	 * @param keys List the keys of all segments are added to
+	 * @return The words in the order in which they were completed
+	 * @throws IOException If the file is not a valid journal
+	 */
+	public static List<Word> readWords(File file, List<String> keys) throws IOException {
+		List<Word> words = new ArrayList<>();
+		// Word currently being processed by every session
+		Map<Long, Word> current = new LinkedHashMap<>();
+		read(file, new Reader() {
+			@Override
+			public void segment(String key) {
+				keys.add(key);
+				// Sessions are numbered per segment
+				finishWords(current, words);
+			}
+
+			@Override
+			public void step(long session, String input, String output) {
+				addStep(current, words, session, input, output);
+			}
+
+			@Override
+			public void timing(long[] timing) {
+				// Not part of the words
+			}
+		});
+		finishWords(current, words);
+		return words;
+	}
+
+	/**
+	 * Add the timing of all steps in a journal to a report. The state of every step is made up of the input symbols
+	 * its session processed since the last reset.
+	 *
+	 * @param file Journal to read
+	 * @param report Report to add the timing to
+	 * @return Number of steps with timing
+	 * @throws IOException If the file is not a valid journal
+	 */
+	public static long readTimings(File file, TimingReport report) throws IOException {
+		// Input symbols processed by every session since the last reset
+		Map<Long, List<String>> prefixes = new HashMap<>();
+		long[] count = new long[1];
+		read(file, new Reader() {
+			List<String> last;
+
+			@Override
+			public void segment(String key) {
+				prefixes.clear();
+				last = null;
+			}
+
+			@Override
+			public void step(long session, String input, String output) {
+				List<String> prefix = prefixes.computeIfAbsent(session, k -> new ArrayList<>());
+				if(input.equals(TLSAttackerConnector.SYMBOL_RESET)) {
+					prefix.clear();
+					last = null;
+				} else {
+					prefix.add(input);
+					last = prefix;
+				}
+			}
+
+			@Override
+			public void timing(long[] timing) {
+				if(last != null) {
+					report.record(last.subList(0, last.size() - 1), last.get(last.size() - 1), timing);
+					count[0]++;
+				}
+			}
+		});
+		return count[0];
+	}
+
+	private static void read(File file, Reader reader) throws IOException {
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+			List<String> strings = new ArrayList<>();
+			boolean first = true;
+
+			while(true) {
+				int type = in.read();
+				if(type == -1) {
+					break;
+				}
+				if(first && type != RECORD_SEGMENT) {
+					throw new IOException(file.getPath() + " is not a query journal");
+				}
+				first = false;
+				try {
+					switch(type) {
+					case RECORD_SEGMENT:
+						if(in.readInt() != FILE_MAGIC) {
+							throw new IOException(file.getPath() + " is not a query journal");
+						}
+						int version = in.readInt();
+						if(version < MIN_FILE_VERSION || version > FILE_VERSION) {
+							throw new IOException("Unsupported version " + version + " of query journal " + file.getPath());
+						}
+						String key = in.readUTF();
+						in.readLong();
+						// Strings are numbered per segment
+						strings.clear();
+						reader.segment(key);
+						break;
+					case RECORD_STRING:
+						strings.add(in.readUTF());
+						break;
+					case RECORD_STEP:
+						long session = readVarLong(in);
+						String input = strings.get((int) readVarLong(in));
+						String output = strings.get((int) readVarLong(in));
+						readVarLong(in);
+						readVarLong(in);
+						reader.step(session, input, output);
+						break;
+					case RECORD_TIMING:
+						long[] timing = new long[(int) readVarLong(in)];
+						for(int i = 0; i < timing.length; i++) {
+							timing[i] = readVarLong(in);
+						}
+						reader.timing(timing);
+						break;
+					default:
+						throw new IOException("Unknown record type " + type + " in query journal " + file.getPath());
+					}
+				} catch(EOFException e) {
+					break;
+				}
+			}
+		}
+	}
+
+	private static void addStep(Map<Long, Word> current, List<Word> words, long session, String input, String output) {
+		Word word = current.get(session);
+		if(input.equals(TLSAttackerConnector.SYMBOL_RESET)) {
+			if(word != null && !word.inputs.isEmpty()) {
+				words.add(word);
+			}
+			current.put(session, new Word());
+			return;
+		}
+		if(word == null) {
+			// Symbols processed before the first reset start from a new connection as well
+			word = new Word();
+			current.put(session, word);
+		}
+		word.inputs.add(input);
+		word.outputs.add(output);
+	}
+
+	private static void finishWords(Map<Long, Word> current, List<Word> words) {
+		for(Word word: current.values()) {
+			if(!word.inputs.isEmpty()) {
+				words.add(word);
+			}
+		}
+		current.clear();
+	}
+
+	static void writeVarLong(DataOutput out, long value) throws IOException {
+		while((value & ~0x7fL) != 0) {
+			out.writeByte((int) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	static long readVarLong(DataInput in) throws IOException {
+		long value = 0;
+		for(int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7f) << shift;
+			if((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Invalid variable length integer in query journal");
+	}
+}
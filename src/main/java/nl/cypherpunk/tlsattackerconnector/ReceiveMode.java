@@ -0,0 +1,16 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+/**
+ * Strategies a transport handler can use to decide when a response is complete
+ */
+public enum ReceiveMode {
+	/**
+	 * Return the data that is available once something arrived, or wait the full timeout if nothing arrives
+	 */
+	TIMEOUT,
+	/**
+	 * Parse TLS record headers while reading and return as soon as a complete flight was received or the peer
+	 * has been quiet for a short interval. The full timeout only applies when nothing arrives at all.
+	 */
+	FLIGHT
+}
@@ -0,0 +1,86 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+/**
+ * Timestamps, taken with {@link System#nanoTime()}, of the messages sent for an input symbol and of every record
+ * received in response. A transport handler fills it while sending and receiving, and the session reads it after the
+ * response was received. The arrays are allocated once, so capturing does not allocate.
+ */
+public class RecordTiming {
+	static final int MAX_RECORDS = 256;
+
+	private long sendStart = -1;
+	private long sendEnd = -1;
+	private final long[] arrivals = new long[MAX_RECORDS];
+	private int records = 0;
+
+	/**
+	 * Forget the timestamps of the previous input symbol
+	 */
+	public void start() {
+		sendStart = -1;
+		sendEnd = -1;
+		records = 0;
+	}
+
+	/**
+	 * @param start Time at which sending data started
+	 * @param end Time at which all data was handed to the operating system
+	 */
+	public void sent(long start, long end) {
+		if(sendStart < 0) {
+			sendStart = start;
+		}
+		sendEnd = end;
+	}
+
+	/**
+	 * @param time Time at which data was read
+	 * @param count Number of records that were completed by the data
+	 */
+	public void received(long time, int count) {
+		for(int i = 0; i < count && records < MAX_RECORDS; i++) {
+			arrivals[records++] = time;
+		}
+	}
+
+	/**
+	 * @return True if data was sent since the last call to {@link #start()}
+	 */
+	public boolean isSent() {
+		return sendEnd >= 0;
+	}
+
+	/**
+	 * @return Time in nanoseconds it took to send the data of the input symbol
+	 */
+	public long getSendDuration() {
+		return sendEnd - sendStart;
+	}
+
+	/**
+	 * @return Number of records received, at most {@link #MAX_RECORDS}
+	 */
+	public int getRecordCount() {
+		return records;
+	}
+
+	/**
+	 * @param record Index of a received record
+	 * @return Time in nanoseconds from the end of sending until the record was received
+	 */
+	public long getRecordLatency(int record) {
+		return arrivals[record] - sendEnd;
+	}
+
+	/**
+	 * @return The send duration followed by the latency of every record, in nanoseconds
+	 */
+	public long[] toArray() {
+		long[] timing = new long[records + 1];
+		timing[0] = getSendDuration();
+		for(int i = 0; i < records; i++) {
+			timing[i + 1] = getRecordLatency(i);
+		}
+		return timing;
+	}
+}
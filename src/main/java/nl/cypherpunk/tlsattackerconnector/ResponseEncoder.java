@@ -0,0 +1,131 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import de.rub.nds.tlsattacker.core.constants.AlertDescription;
+import de.rub.nds.tlsattacker.core.constants.AlertLevel;
+
+/**
+ * Builds the output strings of responses without allocating for responses that were seen before. The names of all
+ * alerts are prepared once, and every encoder remembers the output strings it built for recent sequences of message
+ * names. An encoder is used by a single session.
+ */
+public class ResponseEncoder {
+	static final String SEPARATOR = "|";
+	static final String EMPTY = "-";
+	// Number of remembered output strings, which must be a power of two
+	static final int TABLE_SIZE = 256;
+	static final int MAX_PARTS = 64;
+
+	// Names of all alerts, indexed by the level and the unsigned description
+	private static final String[][] ALERT_NAMES = new String[AlertLevel.values().length][256];
+
+	static {
+		for(AlertLevel level: AlertLevel.values()) {
+			for(int i = 0; i < 256; i++) {
+				AlertDescription description = AlertDescription.getAlertDescription((byte) i);
+				ALERT_NAMES[level.ordinal()][i] = "ALERT_" + level.name() + "_" + (description == null ? "UNKNOWN" : description.name());
+			}
+		}
+	}
+
+	private final String[] parts = new String[MAX_PARTS];
+	private int count = 0;
+	private final Entry[] table = new Entry[TABLE_SIZE];
+	private final StringBuilder builder = new StringBuilder(128);
+
+	/**
+	 * An output string and the message names it consists of
+	 */
+	private static class Entry {
+		final String[] parts;
+		final String output;
+
+		Entry(String[] parts, String output) {
+			this.parts = parts;
+			this.output = output;
+		}
+	}
+
+	/**
+	 * Get the name of an alert, for example ALERT_FATAL_HANDSHAKE_FAILURE
+	 *
+	 * @param level Level of the alert
+	 * @param description Description of the alert
+	 * @return The name of the alert
+	 */
+	public static String getAlertName(byte level, byte description) {
+		return ALERT_NAMES[AlertLevel.getAlertLevel(level).ordinal()][description & 0xff];
+	}
+
+	/**
+	 * Start a new output
+	 */
+	public void clear() {
+		count = 0;
+	}
+
+	/**
+	 * @param name Name of the next received message
+	 */
+	public void add(String name) {
+		if(count == parts.length) {
+			// Very long responses are joined into a single part, which is never remembered
+			String joined = join();
+			count = 0;
+			parts[count++] = joined;
+		}
+		parts[count++] = name;
+	}
+
+	/**
+	 * Get the output string of all added message names separated by |, or - if none were added
+	 *
+	 * @return The output string
+	 */
+	public String encode() {
+		if(count == 0) {
+			return EMPTY;
+		}
+		if(count == 1) {
+			return parts[0];
+		}
+
+		int hash = 1;
+		for(int i = 0; i < count; i++) {
+			hash = 31 * hash + parts[i].hashCode();
+		}
+		int index = (hash ^ (hash >>> 16)) & (TABLE_SIZE - 1);
+		Entry entry = table[index];
+		if(entry != null && matches(entry.parts)) {
+			return entry.output;
+		}
+
+		String output = join();
+		String[] entryParts = new String[count];
+		System.arraycopy(parts, 0, entryParts, 0, count);
+		table[index] = new Entry(entryParts, output);
+		return output;
+	}
+
+	private boolean matches(String[] entryParts) {
+		if(entryParts.length != count) {
+			return false;
+		}
+		for(int i = 0; i < count; i++) {
+			if(!entryParts[i].equals(parts[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private String join() {
+		builder.setLength(0);
+		for(int i = 0; i < count; i++) {
+			if(i > 0) {
+				builder.append(SEPARATOR);
+			}
+			builder.append(parts[i]);
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,200 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.rub.nds.tlsattacker.core.state.State;
+import de.rub.nds.tlsattacker.transport.TransportHandler;
+
+/**
+ * Keeps a number of states ready that are already connected to the server and have their record layer initialised,
+ * so a reset only has to swap the state of a session. States are prepared in the background and checked before they
+ * are handed out, so connections that were closed by the peer in the meantime are replaced. If preparing a state
+ * fails, for example while the server is down, the pool waits increasingly long before trying again.
+ */
+public class SessionPool {
+	// Shared by all pools, as preparing states mostly waits for the network
+	private static final ExecutorService refillExecutor = ConnectorExecutors.create(ExecutorType.CACHED, 0, "session-pool");
+	// Time in ms to wait before preparing states again after the first failure, doubled for every further failure
+	static final long MIN_BACKOFF = 100;
+	static final long MAX_BACKOFF = 5000;
+
+	private final ConnectorSession session;
+	private final int size;
+	private final long maxIdle;
+	private final LinkedBlockingQueue<PooledState> ready = new LinkedBlockingQueue<>();
+	private final AtomicInteger pending = new AtomicInteger();
+	// Guarded by this, so no prepared state is added after the pool was closed
+	private boolean closed = false;
+	private long backoff = 0;
+	// Time in ms before which no states are prepared, after a failure
+	private volatile long retryAt = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong stale = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private volatile String lastFailure;
+
+	/**
+	 * @param session Session to prepare states for
+	 * @param size Number of states to keep ready
+	 * @param maxIdle Time in milliseconds after which a prepared state is no longer used
+	 */
+	public SessionPool(ConnectorSession session, int size, long maxIdle) {
+		this.session = session;
+		this.size = size;
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * Start preparing states in the background
+	 */
+	public void start() {
+		refill();
+	}
+
+	/**
+	 * Get a prepared state, or create a new one if none is available
+	 *
+	 * @return A state that is connected to the server
+	 * @throws IOException
+	 */
+	public State take() throws IOException {
+		try {
+			PooledState pooled;
+			while((pooled = ready.poll()) != null) {
+				if(System.currentTimeMillis() - pooled.created <= maxIdle && !isStale(pooled.state)) {
+					hits.incrementAndGet();
+					return pooled.state;
+				}
+				stale.incrementAndGet();
+				closeState(pooled.state);
+			}
+
+			misses.incrementAndGet();
+			return session.createState();
+		} finally {
+			refill();
+		}
+	}
+
+	/**
+	 * Close all prepared connections and stop preparing new ones
+	 */
+	public void close() {
+		List<PooledState> states = new ArrayList<>();
+		synchronized(this) {
+			closed = true;
+			ready.drainTo(states);
+		}
+		for(PooledState pooled: states) {
+			closeState(pooled.state);
+		}
+	}
+
+	private synchronized void refill() {
+		if(System.currentTimeMillis() < retryAt) {
+			return;
+		}
+		while(!closed && ready.size() + pending.get() < size) {
+			pending.incrementAndGet();
+			refillExecutor.execute(new Runnable() {
+				public void run() {
+					try {
+						State state = session.createState();
+						if(!offer(state)) {
+							closeState(state);
+						}
+					} catch(Exception e) {
+						failed(e);
+					} finally {
+						pending.decrementAndGet();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Add a prepared state to the pool, unless the pool was closed
+	 *
+	 * @param state The prepared state
+	 * @return False if the pool was closed and the state was not added
+	 */
+	private synchronized boolean offer(State state) {
+		if(closed) {
+			return false;
+		}
+		ready.offer(new PooledState(state));
+		backoff = 0;
+		return true;
+	}
+
+	private synchronized void failed(Exception e) {
+		// A failing server is also reported when a state is created synchronously, so only count it here
+		failures.incrementAndGet();
+		lastFailure = e.toString();
+		backoff = backoff == 0 ? MIN_BACKOFF : Math.min(MAX_BACKOFF, backoff * 2);
+		retryAt = System.currentTimeMillis() + backoff;
+	}
+
+	private static boolean isStale(State state) throws IOException {
+		TransportHandler transportHandler = state.getTlsContext().getTransportHandler();
+		if(transportHandler instanceof ConnectorTransport) {
+			return ((ConnectorTransport) transportHandler).isStale();
+		}
+		return transportHandler.isClosed();
+	}
+
+	private static void closeState(State state) {
+		try {
+			state.getTlsContext().getTransportHandler().closeConnection();
+		} catch(IOException e) {
+			// The connection is discarded anyway
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getStale() {
+		return stale.get();
+	}
+
+	/**
+	 * @return Number of times preparing a state in the background failed
+	 */
+	public long getFailures() {
+		return failures.get();
+	}
+
+	/**
+	 * @return A one line summary of the pool statistics
+	 */
+	public String getStatistics() {
+		String statistics = String.format("Session pool: %d ready, %d hits, %d misses, %d stale connections replaced, %d failed to prepare",
+				ready.size(), hits.get(), misses.get(), stale.get(), failures.get());
+		String failure = lastFailure;
+		return failure != null ? statistics + " (last: " + failure + ")" : statistics;
+	}
+
+	private static class PooledState {
+		final State state;
+		final long created = System.currentTimeMillis();
+
+		PooledState(State state) {
+			this.state = state;
+		}
+	}
+}
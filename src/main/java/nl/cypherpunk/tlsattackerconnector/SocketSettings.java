@@ -0,0 +1,217 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How connections to the target are set up and closed. It is shared by all transport handlers, so local ports are
+ * rotated across sessions.
+ *
+ * At high reset rates every normally closed connection leaves its local port in TIME_WAIT, until no ephemeral port is
+ * left. Connections can therefore be closed abortively, and bound to an explicit range of local ports. When
+ * connecting fails because no local port is available, the connection is retried with an exponential backoff.
+ */
+public class SocketSettings {
+	// Upper limit of the time waited before retrying to connect
+	static final long MAX_BACKOFF = 2000;
+
+	/**
+	 * Creates a new unconnected socket
+	 */
+	public interface SocketOpener {
+		Socket open() throws IOException;
+	}
+
+	private final CloseMode closeMode;
+	private final boolean reuseAddress;
+	private final int firstPort;
+	private final int portCount;
+	private final int connectRetries;
+	private final long connectBackoff;
+	private final AtomicInteger nextPort = new AtomicInteger();
+
+	private final AtomicLong connections = new AtomicLong();
+	private final AtomicLong portsInUse = new AtomicLong();
+	private final AtomicLong exhausted = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+
+	/**
+	 * Settings matching a plain socket, retrying when no local port is available
+	 */
+	public SocketSettings() {
+		this(CloseMode.NORMAL, false, 0, 0, 10, 50);
+	}
+
+	/**
+	 * @param closeMode How connections are closed
+	 * @param reuseAddress Set SO_REUSEADDR, so local ports in TIME_WAIT can be bound again
+	 * @param firstPort First local port to bind to, or 0 to use ephemeral ports
+	 * @param lastPort Last local port to bind to
+	 * @param connectRetries Number of times connecting is retried when no local port is available
+	 * @param connectBackoff Time in ms waited before the first retry, doubling for every further retry
+	 */
+	public SocketSettings(CloseMode closeMode, boolean reuseAddress, int firstPort, int lastPort, int connectRetries, long connectBackoff) {
+		this.closeMode = closeMode;
+		this.reuseAddress = reuseAddress;
+		this.firstPort = firstPort;
+		this.portCount = firstPort == 0 ? 0 : lastPort - firstPort + 1;
+		this.connectRetries = connectRetries;
+		this.connectBackoff = connectBackoff;
+	}
+
+	/**
+	 * Parse a range of local ports
+	 *
+	 * @param range Range in the form first-last, or a single port
+	 * @return The first and the last port
+	 * @throws IllegalArgumentException If the range is not valid
+	 */
+	public static int[] parsePortRange(String range) {
+		String[] parts = range.split("-", 2);
+		int[] ports = new int[2];
+		try {
+			ports[0] = Integer.parseInt(parts[0].trim());
+			ports[1] = parts.length == 2 ? Integer.parseInt(parts[1].trim()) : ports[0];
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid local port range " + range);
+		}
+		if(ports[0] < 1 || ports[1] > 65535 || ports[0] > ports[1]) {
+			throw new IllegalArgumentException("Invalid local port range " + range);
+		}
+		return ports;
+	}
+
+	/**
+	 * Connect a new socket to the target. Local ports that are in use are skipped. If no local port is available at
+	 * all, connecting is retried after a backoff.
+	 *
+	 * @param opener Creates the socket, which is called again for every attempt as a failed socket is closed
+	 * @param hostname Host of the target
+	 * @param port Port of the target
+	 * @param connectionTimeout Timeout in ms for connecting
+	 * @return The connected socket
+	 * @throws IOException If connecting fails for another reason, or still fails after all retries
+	 */
+	public Socket connect(SocketOpener opener, String hostname, int port, int connectionTimeout) throws IOException {
+		InetSocketAddress address = new InetSocketAddress(hostname, port);
+		int retries = 0;
+		int skipped = 0;
+
+		while(true) {
+			Socket socket = opener.open();
+			try {
+				socket.setReuseAddress(reuseAddress);
+				if(portCount > 0) {
+					socket.bind(new InetSocketAddress(firstPort + Math.floorMod(nextPort.getAndIncrement(), portCount)));
+				}
+				socket.connect(address, connectionTimeout);
+				connections.incrementAndGet();
+				return socket;
+			} catch(IOException e) {
+				closeQuietly(socket);
+				if(!isPortExhaustion(e)) {
+					throw e;
+				}
+
+				// Try the other ports of the range before backing off
+				if(portCount > 0 && ++skipped < portCount) {
+					portsInUse.incrementAndGet();
+					continue;
+				}
+				skipped = 0;
+				exhausted.incrementAndGet();
+
+				if(retries >= connectRetries) {
+					failures.incrementAndGet();
+					throw new IOException("No local port available to connect to " + hostname + ":" + port + " after " + retries + " retries", e);
+				}
+				long backoff = Math.min(MAX_BACKOFF, connectBackoff << Math.min(retries, 20));
+				retries++;
+				System.out.println("No local port available to connect to " + hostname + ":" + port + " (" + e.getMessage() + "), retry " + retries + " of " + connectRetries + " in " + backoff + " ms");
+				try {
+					Thread.sleep(backoff);
+				} catch(InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting to connect to " + hostname + ":" + port);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check whether connecting failed because no local port or address was available. This is reported as a
+	 * BindException, or on some platforms as another SocketException with the message of the system error.
+	 */
+	static boolean isPortExhaustion(IOException e) {
+		if(e instanceof BindException) {
+			return true;
+		}
+		String message = e.getMessage();
+		return e instanceof SocketException && message != null
+				&& (message.contains("Cannot assign requested address") || message.contains("Address already in use"));
+	}
+
+	/**
+	 * Configure a socket according to the close mode before it is closed
+	 *
+	 * @param socket Socket that is about to be closed, or null
+	 */
+	public void prepareClose(Socket socket) {
+		if(closeMode != CloseMode.ABORT || socket == null || socket.isClosed()) {
+			return;
+		}
+		try {
+			socket.setSoLinger(true, 0);
+		} catch(SocketException e) {
+			// The socket is closed normally
+		}
+	}
+
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch(IOException e) {
+			// Nothing left to clean up
+		}
+	}
+
+	public CloseMode getCloseMode() {
+		return closeMode;
+	}
+
+	public long getConnections() {
+		return connections.get();
+	}
+
+	/**
+	 * @return Number of times a local port of the range was skipped because it was in use
+	 */
+	public long getPortsInUse() {
+		return portsInUse.get();
+	}
+
+	/**
+	 * @return Number of times no local port was available, after which connecting was retried or failed
+	 */
+	public long getExhausted() {
+		return exhausted.get();
+	}
+
+	/**
+	 * @return Number of connections that failed after all retries
+	 */
+	public long getFailures() {
+		return failures.get();
+	}
+
+	public String getStatistics() {
+		return String.format("Sockets: %d connections, %d local ports skipped, %d times no local port available, %d failures",
+				connections.get(), portsInUse.get(), exhausted.get(), failures.get());
+	}
+}
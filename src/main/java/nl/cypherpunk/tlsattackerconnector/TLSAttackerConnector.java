@@ -1,22 +1,28 @@
 package nl.cypherpunk.tlsattackerconnector;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FilenameFilter;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
 import java.math.BigInteger;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.security.Security;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-
-import javax.xml.bind.JAXBException;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.config.Configurator;
@@ -27,25 +33,13 @@ import com.beust.jcommander.Parameter;
 
 import de.rub.nds.tlsattacker.core.config.Config;
 import de.rub.nds.tlsattacker.core.connection.OutboundConnection;
-import de.rub.nds.tlsattacker.core.constants.AlertDescription;
-import de.rub.nds.tlsattacker.core.constants.AlertLevel;
 import de.rub.nds.tlsattacker.core.constants.CipherSuite;
 import de.rub.nds.tlsattacker.core.constants.CompressionMethod;
-import de.rub.nds.tlsattacker.core.constants.ProtocolMessageType;
 import de.rub.nds.tlsattacker.core.constants.ProtocolVersion;
-import de.rub.nds.tlsattacker.core.exceptions.WorkflowExecutionException;
-import de.rub.nds.tlsattacker.core.protocol.message.AlertMessage;
-import de.rub.nds.tlsattacker.core.protocol.message.ProtocolMessage;
-import de.rub.nds.tlsattacker.core.record.AbstractRecord;
-import de.rub.nds.tlsattacker.core.record.Record;
 import de.rub.nds.tlsattacker.core.record.RecordCryptoComputations;
 import de.rub.nds.tlsattacker.core.state.State;
-import de.rub.nds.tlsattacker.core.state.TlsContext;
 import de.rub.nds.tlsattacker.core.workflow.WorkflowTrace;
 import de.rub.nds.tlsattacker.core.workflow.WorkflowTraceSerializer;
-import de.rub.nds.tlsattacker.core.workflow.action.ReceiveAction;
-import de.rub.nds.tlsattacker.core.workflow.action.SendAction;
-import de.rub.nds.tlsattacker.core.workflow.action.TlsAction;
 import de.rub.nds.tlsattacker.util.UnlimitedStrengthEnabler;
 
 /**
@@ -55,19 +49,160 @@ import de.rub.nds.tlsattacker.util.UnlimitedStrengthEnabler;
 public class TLSAttackerConnector {
 	static String SYMBOL_CONNECTION_CLOSED = "ConnectionClosed";
 	static String SYMBOL_RESET = "RESET";
+	static String WORD_DELIMITER = " ";
+	// Answer to a line from the learner that does not contain an input symbol
+	static String OUTPUT_EMPTY_INPUT = "EmptyInput";
 	
 	Config config;
-	State state;
-	HashMap<String, WorkflowTrace> messages = new HashMap<>();
+	ConnectorSession session;
+	// Replaced as a whole when the messages are reloaded, so sessions can keep using the previous messages
+	volatile Map<String, LoadedMessage> loadedMessages = Collections.emptyMap();
+	MessageLoader messageLoader;
+	QueryCache queryCache;
+	File queryCacheFile;
+	// Shared by all sessions, null if adaptive timeouts are disabled
+	AdaptiveTimeout adaptiveTimeout;
+	// Shared by all sessions, null if key exchange computations are not cached
+	KeyExchangeCache keyExchangeCache;
+	// Shared by all sessions, so local ports are rotated across them
+	SocketSettings socketSettings = new SocketSettings();
+	// Shared by all sessions, null if there is a single target
+	TargetReplicas replicas;
+	// Shared by all sessions, null if no journal is written
+	QueryJournal journal;
+	// Shared by all sessions, null if no timing report is written
+	TimingReport timingReport;
+	// Targets every input symbol is executed on, null if there is a single target
+	List<TargetReplicas.Replica> differentialTargets;
+	// Runs the symbols of all but the first differential target
+	ExecutorService differentialExecutor;
+	final ConnectorMetrics metrics = new ConnectorMetrics(this);
+	EmbeddedTarget embeddedTarget;
 
 	@Parameter(names = {"--listen", "-l"}, description = "Listen port")
 	int listenPort = 6666;	
+	@Parameter(names = {"--listenSocket"}, description = "Path of a Unix domain socket to listen on for learners instead of the listen port (requires Java 16 or later, which TLS-Attacker 3.6.0 does not run on)")
+	String listenSocket = null;
 	@Parameter(names = {"--targetHost", "-tH"}, description = "Target host")
 	String targetHostname = "localhost";
 	@Parameter(names = {"--targetPort", "-tP"}, description = "Target port")
 	int targetPort = 4433;
+	@Parameter(names = {"--targets"}, description = "Comma-separated list of equivalent targets in the form host:port, over which the sessions are spread. Replaces --targetHost and --targetPort.")
+	List<String> targetStrings = new ArrayList<>();
+	@Parameter(names = {"--differentialTargets"}, description = "Comma-separated list of different targets (host:port) to execute every input symbol on at the same time, returning all outputs if they differ")
+	List<String> differentialTargetStrings = new ArrayList<>();
+	@Parameter(names = {"--replicaScheduling"}, description = "How a target is selected for a new session: ROUND_ROBIN or LEAST_LOADED")
+	TargetReplicas.Scheduling replicaScheduling = TargetReplicas.Scheduling.LEAST_LOADED;
+	@Parameter(names = {"--replicaMaxFailures"}, description = "Number of failed connections in a row after which a target is dropped")
+	int replicaMaxFailures = 3;
+	@Parameter(names = {"--replicaMaxDivergences"}, description = "Number of outputs diverging from the outputs of the other targets for the same inputs after which a target is dropped")
+	int replicaMaxDivergences = 3;
+	@Parameter(names = {"--healthCheckInterval"}, description = "Interval in seconds at which is checked whether the targets can be reached, 0 to disable")
+	long healthCheckInterval = 5;
 	@Parameter(names = {"--timeout", "-t"}, description = "Timeout")
 	int timeout = 100;
+	@Parameter(names = {"--adaptiveTimeout", "-aT"}, description = "Learn how long to wait for the response to every input symbol from the observed response times, never waiting longer than the timeout")
+	boolean useAdaptiveTimeout = false;
+	@Parameter(names = {"--timeoutPercentile"}, description = "Percentile of the observed response times used for adaptive timeouts")
+	double timeoutPercentile = 99;
+	@Parameter(names = {"--timeoutMargin"}, description = "Factor the percentile of the observed response times is multiplied with for adaptive timeouts")
+	double timeoutMargin = 2;
+	@Parameter(names = {"--timeoutMinimum"}, description = "Time in ms that is always added to an adaptive timeout, to absorb occasional delays of the target")
+	long timeoutMinimum = 20;
+	@Parameter(names = {"--timeoutMinSamples"}, description = "Number of observations of an input symbol needed before its timeout is adapted")
+	int timeoutMinSamples = 10;
+	
+	@Parameter(names = {"--keyExchangeCache", "-kC"}, description = "Reuse the public key operations of ClientKeyExchange messages for the same server key and parameters")
+	boolean useKeyExchangeCache = false;
+	@Parameter(names = {"--freshKeyExchange"}, description = "Use a fresh private key or premaster secret for every ClientKeyExchange, prepared in the background. Implies --keyExchangeCache")
+	boolean freshKeyExchange = false;
+	@Parameter(names = {"--keyExchangePool"}, description = "Number of fresh private keys or premaster secrets to keep ready for every server key and set of parameters")
+	int keyExchangePoolSize = 16;
+	
+	@Parameter(names = {"--receiveMode", "-rM"}, description = "How to decide a response is complete: TIMEOUT or FLIGHT (return as soon as the flight of the peer is complete)")
+	ReceiveMode receiveMode = ReceiveMode.TIMEOUT;
+	@Parameter(names = {"--quietTime", "-qT"}, description = "Time in ms the peer has to be quiet before a partial flight is considered complete, when using receive mode FLIGHT")
+	int quietTime = 20;
+	@Parameter(names = {"--transport", "-tr"}, description = "Transport handler to use: STREAM or NIO (non-blocking channel with pooled buffers)")
+	TransportType transportType = TransportType.STREAM;
+	@Parameter(names = {"--directBuffers"}, description = "Use direct buffers for the NIO transport handler")
+	boolean directBuffers = false;
+	@Parameter(names = {"--closeMode"}, description = "How connections to the target are closed: NORMAL or ABORT (send a RST, so the local port does not stay in TIME_WAIT)")
+	CloseMode closeMode = CloseMode.NORMAL;
+	@Parameter(names = {"--localPorts"}, description = "Range of local ports to connect from in rotation, for example 40000-49999. If none is provided, ephemeral ports are used.")
+	String localPortRange = null;
+	@Parameter(names = {"--reuseAddress"}, description = "Set SO_REUSEADDR on connections to the target, so local ports in TIME_WAIT can be bound again")
+	boolean reuseAddress = false;
+	@Parameter(names = {"--connectRetries"}, description = "Number of times connecting to the target is retried when no local port is available")
+	int connectRetries = 10;
+	@Parameter(names = {"--connectBackoff"}, description = "Time in ms waited before the first retry when no local port is available, doubling for every further retry")
+	long connectBackoff = 50;
+	
+	@Parameter(names = {"--multiLearner", "-mL"}, description = "Accept multiple concurrent learner connections, each with its own session")
+	boolean multiLearner = false;
+	@Parameter(names = {"--maxSessions"}, description = "Maximum number of concurrent learner connections when accepting multiple learners")
+	int maxSessions = 16;
+	@Parameter(names = {"--executor"}, description = "Threads used for concurrent learner connections: FIXED, CACHED or VIRTUAL (falls back to CACHED if virtual threads are not supported)")
+	ExecutorType executorType = ExecutorType.FIXED;
+	
+	@Parameter(names = {"--queryCache", "-qC"}, description = "Answer queries from a prefix tree of previously executed queries where possible")
+	boolean useQueryCache = false;
+	@Parameter(names = {"--queryCacheDir"}, description = "Directory to persist the query cache in, so it survives restarts of the connector")
+	String queryCacheDir = null;
+	
+	@Parameter(names = {"--journal", "-j"}, description = "File to append a binary journal of all processed input symbols, their outputs and timing to")
+	String journalFile = null;
+	@Parameter(names = {"--journalBuffer"}, description = "Maximum number of journal entries waiting to be written, after which sessions wait for the disk")
+	int journalBufferSize = 65536;
+	@Parameter(names = {"--replay"}, description = "Execute all words in a journal against the target as fast as possible and report the outputs that differ, instead of waiting for a learner")
+	String replayFile = null;
+	@Parameter(names = {"--replayThreads"}, description = "Number of words that are executed concurrently when replaying a journal")
+	int replayThreads = 1;
+	@Parameter(names = {"--captureTiming"}, description = "Timestamp the sending of every input symbol and every received record with a nanosecond clock, and write the timing to the journal")
+	boolean captureTiming = false;
+	@Parameter(names = {"--timingReport"}, description = "File to write the latency distributions of the received records per state and input symbol to as CSV when the connector exits. Implies --captureTiming.")
+	String timingReportFile = null;
+	@Parameter(names = {"--timingFromJournal"}, description = "Write the latency distributions of the records in a journal to the --timingReport file, or to the console, and exit")
+	String timingJournalFile = null;
+	@Parameter(names = {"--quiet", "-q"}, description = "Do not print every input symbol and its output")
+	boolean quiet = false;
+	
+	@Parameter(names = {"--sessionPool", "-sP"}, description = "Number of connections to keep ready for every learner, so a RESET does not have to wait for a new connection")
+	int sessionPoolSize = 0;
+	@Parameter(names = {"--sessionPoolMaxIdle"}, description = "Time in ms after which a prepared connection is no longer used")
+	long sessionPoolMaxIdle = 10000;
+	
+	@Parameter(names = {"--metricsPort"}, description = "Serve metrics in the Prometheus text format on this port at http://localhost:<port>/metrics")
+	int metricsPort = 0;
+	@Parameter(names = {"--metricsInterval"}, description = "Interval in seconds at which a summary of the metrics is printed, 0 to disable")
+	long metricsInterval = 0;
+	
+	@Parameter(names = {"--warmup"}, description = "Maximum number of rounds of handshakes built from the loaded messages that are executed before accepting learners, 0 to disable")
+	int warmupRounds = 0;
+	@Parameter(names = {"--warmupTarget"}, description = "Target to execute the warm-up against: TARGET or EMBEDDED (a temporary embedded target)")
+	WarmUp.Target warmupTarget = WarmUp.Target.TARGET;
+	@Parameter(names = {"--warmupTolerance"}, description = "Relative difference between the durations of two consecutive warm-up rounds at which the warm-up stops")
+	double warmupTolerance = 0.1;
+	@Parameter(names = {"--warmupOnly"}, description = "Exit after the warm-up, for example to create a class data sharing archive")
+	boolean warmupOnly = false;
+	
+	@Parameter(names = {"--load"}, description = "Generate load on the target with concurrent sessions instead of waiting for a learner")
+	boolean generateLoad = false;
+	@Parameter(names = {"--loadWords"}, description = "Comma-separated list of words executed when generating load, with the input symbols of a word separated by spaces. If none are provided, handshakes built from the loaded messages are used.")
+	List<String> loadWordStrings = new ArrayList<>();
+	@Parameter(names = {"--loadSessions"}, description = "Number of concurrent sessions when generating load")
+	int loadSessions = 100;
+	@Parameter(names = {"--loadRate"}, description = "Number of words started per second by all sessions together when generating load, 0 for as fast as possible")
+	double loadRate = 0;
+	@Parameter(names = {"--loadDuration"}, description = "Time in seconds to generate load for")
+	long loadDuration = 30;
+	
+	@Parameter(names = {"--embeddedTarget", "-eT"}, description = "Start a JSSE based TLS server inside the connector and use it as target")
+	boolean useEmbeddedTarget = false;
+	@Parameter(names = {"--embeddedKeyExchanges"}, description = "Comma-separated list of key exchanges the embedded target supports: RSA, DHE and/or ECDHE")
+	List<String> embeddedKeyExchangeStrings = new ArrayList<>(Arrays.asList("RSA", "DHE", "ECDHE"));
+	@Parameter(names = {"--embeddedCipherSuites"}, description = "Comma-separated list of cipher suites the embedded target supports. If none is provided, all cipher suites supported by JSSE with one of the key exchanges are used.")
+	List<String> embeddedCipherSuiteStrings = new ArrayList<>();
 	
 	@Parameter(names = {"--cipherSuite", "-cS"}, description = "Comma-separated list of ciphersuites to use. If none is provided this will default to TLS_RSA_WITH_AES_128_CBC_SHA256.")
 	List<String> cipherSuiteStrings = new ArrayList<>();
@@ -79,6 +214,10 @@ public class TLSAttackerConnector {
 	
 	@Parameter(names = {"--messageDir", "-mD"}, description = "Directory to load messages from")
 	String messageDir = "messages";
+	@Parameter(names = {"--loaderThreads"}, description = "Number of messages that are parsed concurrently when loading the message directory")
+	int loaderThreads = Runtime.getRuntime().availableProcessors();
+	@Parameter(names = {"--watchMessages"}, description = "Reload the messages when a file in the message directory changes, without restarting the connector")
+	boolean watchMessages = false;
 	
 	@Parameter(names = {"--help", "-h"}, description = "Display help", help = true)
 	private boolean help;
@@ -86,6 +225,12 @@ public class TLSAttackerConnector {
 	private boolean test;
 	@Parameter(names = {"--testCipherSuites"}, description = "Try to determine which CipherSuites are supported")
 	private boolean testCipherSuites;
+	@Parameter(names = {"--scanThreads"}, description = "Number of CipherSuites that are tested concurrently")
+	int scanThreads = Runtime.getRuntime().availableProcessors();
+	@Parameter(names = {"--scanReport"}, description = "File to write a JSON report of the tested CipherSuites to")
+	String scanReport = null;
+	@Parameter(names = {"--debugTraces"}, description = "Print the workflow traces of the messages that are sent")
+	boolean debugTraces = false;
 	@Parameter(names = {"--listMessages"}, description = "List all loaded messages")
 	private boolean listMessages;	
 	
@@ -112,11 +257,61 @@ public class TLSAttackerConnector {
 		config = Config.createConfig();
 		config.setEnforceSettings(false);
 		
+		if(timingReportFile != null) {
+			captureTiming = true;
+		}
+		
+		if(!differentialTargetStrings.isEmpty()) {
+			if(!targetStrings.isEmpty()) {
+				throw new Exception("--targets and --differentialTargets cannot be combined");
+			}
+			try {
+				differentialTargets = TargetReplicas.parseTargets(differentialTargetStrings);
+			} catch(IllegalArgumentException e) {
+				throw new Exception(e.getMessage());
+			}
+			// The first target is used where a single target is expected
+			targetHostname = differentialTargets.get(0).getHostname();
+			targetPort = differentialTargets.get(0).getPort();
+			differentialExecutor = ConnectorExecutors.create(ExecutorType.CACHED, 0, "differential");
+		}
+		
+		if(!targetStrings.isEmpty()) {
+			try {
+				replicas = new TargetReplicas(targetStrings, replicaScheduling, replicaMaxFailures, replicaMaxDivergences);
+			} catch(IllegalArgumentException e) {
+				throw new Exception(e.getMessage());
+			}
+			// The first replica is used where a single target is expected
+			targetHostname = replicas.getReplicas().get(0).getHostname();
+			targetPort = replicas.getReplicas().get(0).getPort();
+			if(healthCheckInterval > 0) {
+				replicas.startHealthCheck(healthCheckInterval);
+			}
+		}
+		
 		// Configure hosts
 		OutboundConnection clientConnection = new OutboundConnection(targetPort,  targetHostname);
 		// Timeout that is used when waiting for incoming messages
 		clientConnection.setTimeout(timeout);
 		config.setDefaultClientConnection(clientConnection);
+		
+		if(useAdaptiveTimeout) {
+			adaptiveTimeout = new AdaptiveTimeout(timeout, timeoutMinimum, timeoutPercentile, timeoutMargin, timeoutMinSamples);
+		}
+		if(useKeyExchangeCache || freshKeyExchange) {
+			keyExchangeCache = new KeyExchangeCache(freshKeyExchange, keyExchangePoolSize);
+		}
+		
+		int[] localPorts = new int[2];
+		if(localPortRange != null) {
+			try {
+				localPorts = SocketSettings.parsePortRange(localPortRange);
+			} catch(IllegalArgumentException e) {
+				throw new Exception(e.getMessage());
+			}
+		}
+		socketSettings = new SocketSettings(closeMode, reuseAddress, localPorts[0], localPorts[1], connectRetries, connectBackoff);
 				
 		// Parse provided CipherSuite		
 		List<CipherSuite> cipherSuites = new LinkedList<>();
@@ -171,227 +366,479 @@ public class TLSAttackerConnector {
 		
 		config.setAddRenegotiationInfoExtension(true);
 		
-		initialiseSession();		
+		// The default session uses the configuration directly, so changes to it are picked up on the next reset
+		session = newSession(config);
+		session.initialiseSession();
+	}
+	
+	/**
+	 * Create a new session that is not connected yet, executing input symbols on all differential targets if these
+	 * are provided
+	 * 
+	 * @param sessionConfig Configuration to use for the session
+	 * @return The new session
+	 */
+	protected ConnectorSession newSession(Config sessionConfig) {
+		if(differentialTargets != null) {
+			return new DifferentialSession(this, sessionConfig, differentialTargets);
+		}
+		return new ConnectorSession(this, sessionConfig);
+	}
+	
+	/**
+	 * Create a new session that always connects to the provided target, instead of the target or replicas of the
+	 * connector. The session is not connected yet.
+	 * 
+	 * @param baseConfig Configuration to copy for the session
+	 * @param hostname Host of the target
+	 * @param port Port of the target
+	 * @return The new session
+	 */
+	public ConnectorSession createTargetSession(Config baseConfig, String hostname, int port) {
+		Config sessionConfig = baseConfig.createCopy();
+		OutboundConnection connection = new OutboundConnection(port, hostname);
+		connection.setTimeout(baseConfig.getDefaultClientConnection().getTimeout());
+		sessionConfig.setDefaultClientConnection(connection);
+		
+		return new ConnectorSession(this, sessionConfig) {
+			@Override
+			protected State createState() throws IOException {
+				return createState(null);
+			}
+		};
 	}
 
 	/**
-	 * Reset the connection with the TLS implementation by closing the current socket and initialising a new session
+	 * Create a new session with its own copy of the configuration and connect it to the server
+	 * 
+	 * @return The new session
+	 * @throws IOException
+	 */
+	public ConnectorSession createSession() throws IOException {
+		ConnectorSession newSession = newSession(config.createCopy());
+		newSession.initialiseSession();
+		return newSession;
+	}
+	
+	/**
+	 * Reset the default session
 	 * 
 	 * @throws IOException
 	 */
 	public void reset() throws IOException {
-		close();
-		initialiseSession();
+		session.reset();
 	}
 	
 	/**
-	 * Close the current connection
+	 * Close the connection of the default session
 	 * @throws IOException 
 	 */
 	public void close() throws IOException {
-		state.getTlsContext().getTransportHandler().closeConnection();
-	}	
+		session.close();
+	}
 	
 	/**
-	 * Initialise a TLS connection by configuring a new context and connecting to the server
+	 * Send a message of the provided type using the default session and return the types of the response messages
 	 * 
+	 * @param inputSymbol A string indicating which type of message to send
+	 * @return A string representation of the message types that were received
+	 * @throws Exception 
+	 */
+	public String processInput(String inputSymbol) throws Exception {
+		return session.processInput(inputSymbol);
+	}
+	
+	/**
+	 * Open a session for a learner running in the same JVM. The session uses the query cache and session pool like a
+	 * learner connected over a socket.
+	 * 
+	 * @return The new session, which should be closed when the learner is done
+	 * @throws IOException If the target cannot be reached
+	 */
+	public LearnerSession openSession() throws IOException {
+		ConnectorSession learnerSession = createSession();
+		prepareLearnerSession(learnerSession);
+		return new LearnerSession(learnerSession);
+	}
+	
+	/**
+	 * Open the listener for learner connections, on the Unix domain socket if one is provided and on the listen port
+	 * otherwise
+	 * 
+	 * @return The listener
 	 * @throws IOException
 	 */
-	public void initialiseSession() throws IOException {
-		state = new State(config);
-
-		TlsContext context = state.getTlsContext();
-
-		//TransportHandler transporthandler = TransportHandlerFactory.createTransportHandler(config.getConnectionEnd());
-		ConnectorTransportHandler transporthandler = new ConnectorTransportHandler(config.getDefaultClientConnection().getTimeout(), config.getDefaultClientConnection().getHostname(), config.getDefaultClientConnection().getPort());
-		context.setTransportHandler(transporthandler);
+	protected LearnerListener openListener() throws IOException {
+		return listenSocket != null ? LearnerListener.listenUnix(listenSocket) : LearnerListener.listen(listenPort);
+	}
+	
+	/**
+	 * Start listening on the listen port or socket for a single learner connection, which uses the default session to
+	 * process input symbols and return output symbols. The connector stops listening when the learner disconnects. Use
+	 * {@link #startServer()} to accept multiple concurrent learners.
+	 * 
+	 * @throws Exception 
+	 */
+	public void startListening() throws Exception {
+		LearnerListener listener = openListener();
+		System.out.println("Listening on " + listener);
 		
-		context.initTransportHandler();
-        context.initRecordLayer();
+	    LearnerListener.Connection connection = listener.accept();
+	    prepareLearnerSession(session);
+	    handleLearner(connection, session);
+	    
+	    listener.close();
 	}
 	
 	/**
-	 * Send the provided message to the TLS implementation
+	 * Start listening on the provided port for multiple concurrent learner connections. Every connection gets its own
+	 * session, and at most maxSessions connections are handled at the same time.
 	 * 
-	 * @param message ProtocolMessage to be sent
+	 * @throws Exception
 	 */
-	protected void sendMessage(ProtocolMessage message) {
-		List<ProtocolMessage> messages = new LinkedList<>();
-		messages.add(message);
-
-		SendAction action = new SendAction(messages);
+	public void startServer() throws Exception {
+		// Learners get their own sessions, so don't keep the connection of the default session occupied
+		session.close();
+		
+		LearnerListener listener = openListener();
+		System.out.println("Listening on " + listener + " for up to " + maxSessions + " concurrent learners");
+		
+		ExecutorService executor = ConnectorExecutors.create(executorType, maxSessions, "learner");
+		Semaphore sessionPermits = new Semaphore(maxSessions);
 		
-		WorkflowTrace test = new WorkflowTrace();
-		test.addTlsAction(action);
 		try {
-			System.out.println(WorkflowTraceSerializer.write(test));
-		} catch (JAXBException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			while(true) {
+				// Wait for a free session before accepting the next learner, so excess learners queue up in the backlog
+				sessionPermits.acquire();
+				final LearnerListener.Connection connection;
+				try {
+					connection = listener.accept();
+				} catch(IOException e) {
+					sessionPermits.release();
+					throw e;
+				}
+				
+				executor.execute(new Runnable() {
+					public void run() {
+						ConnectorSession learnerSession = null;
+						try {
+							learnerSession = createSession();
+							prepareLearnerSession(learnerSession);
+							handleLearner(connection, learnerSession);
+						} catch(Exception e) {
+							System.err.println("Error occured for learner " + connection + ": " + e.getMessage());
+							try {
+								connection.close();
+							} catch(IOException e2) {
+								// Nothing left to clean up
+							}
+						} finally {
+							if(learnerSession != null) {
+								try {
+									learnerSession.shutdown();
+								} catch(IOException e) {
+									// Connection was already closed
+								}
+							}
+							sessionPermits.release();
+						}
+					}
+				});
+			}
+		} finally {
+			executor.shutdown();
+			listener.close();
 		}
-		
-		// Need to normalize otherwise an exception is thrown about no connection existing with alias 'null'
-		action.normalize();
-		action.execute(state);
 	}
 	
 	/**
-	 * Execute the provided trace
+	 * Enable the optional features that are only used for sessions serving a learner
 	 * 
-	 * @param trace WorkflowTrace to be executed
+	 * @param learnerSession Session that will serve a learner
 	 */
-	protected void sendMessage(WorkflowTrace trace) {
-		for(TlsAction tlsAction: trace.getTlsActions()) {
-			try {
-				tlsAction.normalize();
-				tlsAction.execute(state);
-			} catch (WorkflowExecutionException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+	protected void prepareLearnerSession(ConnectorSession learnerSession) {
+		learnerSession.setQueryCache(queryCache);
+		if(sessionPoolSize > 0) {
+			learnerSession.enableSessionPool(sessionPoolSize, sessionPoolMaxIdle);
 		}
+	}
+	
+	/**
+	 * Process input symbols from a learner connection using the provided session until the learner disconnects.
+	 * 
+	 * Every line either contains a single input symbol, which is answered with a line containing its output, or a
+	 * complete query consisting of RESET followed by input symbols separated by spaces. A query is answered with a line
+	 * containing the outputs of the symbols after RESET separated by spaces. Whitespace around a line is ignored, and
+	 * an empty line is answered with {@link #OUTPUT_EMPTY_INPUT}. Queries can be pipelined, as responses are only
+	 * flushed once no further input is pending.
+	 * 
+	 * @param connection Connection with the learner
+	 * @param learnerSession Session used to process the input symbols
+	 * @throws Exception
+	 */
+	protected void handleLearner(LearnerListener.Connection connection, ConnectorSession learnerSession) throws Exception {
+	    PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(connection.getOutputStream())), false);
+	    BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
 
-		// Reset trace so we can execute it again
-		trace.reset();
-	}	
-    
+	    String input;
+	    
+	    while((input = in.readLine()) != null) {
+	    	input = input.trim();
+	    	List<String> word = parseWord(input);
+	    	if(word != null) {
+	    		List<String> outputs = learnerSession.runWord(word);
+	    		if(!quiet) {
+	    			System.out.println(input + " / " + String.join(WORD_DELIMITER, outputs));
+	    		}
+	    		// Write the outputs directly, without joining them first
+	    		for(int i = 0; i < outputs.size(); i++) {
+	    			if(i > 0) {
+	    				out.write(WORD_DELIMITER);
+	    			}
+	    			out.write(outputs.get(i));
+	    		}
+	    		out.println();
+	    	} else if(input.isEmpty()) {
+	    		out.println(OUTPUT_EMPTY_INPUT);
+	    	} else {
+	    		String output = learnerSession.processInput(input);
+	    		if(!quiet) {
+	    			System.out.println(input + " / " + output);
+	    		}
+	    		out.println(output);
+	    	}
+	        // Pipelined queries are answered together
+	        if(!in.ready()) {
+	        	out.flush();
+	        }
+	    }	    
+	    
+	    out.flush();
+	    connection.close();
+	    saveQueryCache();
+	    if(learnerSession.getSessionPool() != null) {
+	    	System.out.println(learnerSession.getSessionPool().getStatistics());
+	    }
+	    if(adaptiveTimeout != null) {
+	    	System.out.println(adaptiveTimeout.getStatistics());
+	    }
+	    System.out.println(socketSettings.getStatistics());
+	    if(replicas != null) {
+	    	System.out.println(replicas.getStatistics());
+	    }
+	    if(learnerSession instanceof DifferentialSession) {
+	    	System.out.println(((DifferentialSession) learnerSession).getStatistics());
+	    }
+	    if(keyExchangeCache != null) {
+	    	System.out.println(keyExchangeCache.getStatistics());
+	    }
+	    if(journal != null) {
+	    	System.out.println(journal.getStatistics());
+	    }
+	}
+	
 	/**
-	 * Receive message on the TLS connection
+	 * Split a query received from the learner into input symbols
 	 * 
-	 * @return A string representation of the message types that were received
-	 * @throws IOException
+	 * @param line Line without surrounding whitespace
+	 * @return The input symbols after the leading RESET, or null if the line is not a query
 	 */
-	protected String receiveMessages() throws IOException {
-		// First check if the socket is still open
-		if(state.getTlsContext().getTransportHandler().isClosed()) {
-			return SYMBOL_CONNECTION_CLOSED;
+	protected static List<String> parseWord(String line) {
+		String[] symbols = line.split(WORD_DELIMITER + "+");
+		if(symbols.length < 2 || !symbols[0].equals(SYMBOL_RESET)) {
+			return null;
 		}
-
-		List<String> receivedMessages = new LinkedList<>();
-		ReceiveAction action = new ReceiveAction(new LinkedList<ProtocolMessage>());
-		// Need to normalize otherwise an exception is thrown about no connection existing with alias 'null'
-		action.normalize();
-		// Perform the actual receiving of the message
-		action.execute(state);
-
-		String outputMessage;
-
-        // Check for every record if the MAC is valid. If it is not, do not
-        // continue reading it since its contents might be illegible.
-        for(AbstractRecord abstractRecord: action.getReceivedRecords()) {
-            Record record = (Record) abstractRecord;
-
-            if(record == null) {
-                continue;
-            }
-
-            if(record.getComputations() == null) {
-                continue;
-            }
-
-            if(record.getComputations().getMacValid() == null) {
-                continue;
-            }
-
-            if(!record.getComputations().getMacValid()) {
-                if(state.getTlsContext().getTransportHandler().isClosed()) {
-                    return "InvalidMAC|" + SYMBOL_CONNECTION_CLOSED;
-                }
-                return "InvalidMAC";
-            }
-        }
-
-		// Iterate over all received messages and build a string containing their respective types
-        for(ProtocolMessage message: action.getReceivedMessages()) {
-			if(message.getProtocolMessageType() == ProtocolMessageType.ALERT) {
-				AlertMessage alert = (AlertMessage)message;
-				AlertLevel level = AlertLevel.getAlertLevel(alert.getLevel().getValue());
-				AlertDescription description = AlertDescription.getAlertDescription(alert.getDescription().getValue());
-				outputMessage = "ALERT_" + level.name() + "_";
-				if(description == null) {
-					outputMessage += "UNKNOWN";
-				} else {
-					outputMessage += description.name();
-				}
+		return new ArrayList<>(Arrays.asList(symbols).subList(1, symbols.length));
+	}
+	
+	/**
+	 * Set up the query cache, loading previously cached queries for the current target and configuration if a cache
+	 * directory is provided. The cache is saved again when the connector shuts down.
+	 * 
+	 * @throws Exception
+	 */
+	public void initialiseQueryCache() throws Exception {
+		String key = getConfigurationKey();
+		queryCache = new QueryCache(key);
+		
+		if(queryCacheDir != null) {
+			File dir = new File(queryCacheDir);
+			if(!dir.isDirectory() && !dir.mkdirs()) {
+				throw new Exception(queryCacheDir + " is not a valid directory");
 			}
-			else {
-				outputMessage = message.toCompactString();
+			queryCacheFile = getQueryCacheFile(key);
+			if(queryCache.load(queryCacheFile)) {
+				System.out.println("Loaded query cache from " + queryCacheFile.getPath() + " with " + queryCache.getEntryCount() + " entries");
 			}
-			receivedMessages.add(outputMessage);
 		}
 		
-		if(state.getTlsContext().getTransportHandler().isClosed()) {
-			receivedMessages.add(SYMBOL_CONNECTION_CLOSED);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				saveQueryCache();
+			}
+		});
+	}
+	
+	private File getQueryCacheFile(String key) {
+		// The key is a hex string, of which a prefix is sufficient to distinguish files
+		return new File(queryCacheDir, "querycache-" + key.substring(0, 16) + ".bin");
+	}
+	
+	/**
+	 * Open the journal, if a journal file is provided. It is closed when the connector exits, after all entries have
+	 * been written.
+	 * 
+	 * @throws Exception
+	 */
+	public void initialiseJournal() throws Exception {
+		if(journalFile == null) {
+			return;
 		}
+		journal = new QueryJournal(new File(journalFile), getConfigurationKey(), journalBufferSize);
 		
-		if(receivedMessages.size() > 0) {
-			return String.join("|", receivedMessages);
-		} else {
-			return "-";
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				try {
+					journal.close();
+				} catch(IOException e) {
+					System.err.println("Could not write query journal: " + e.getMessage());
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Enable the query cache, journal, timing report, metrics and message reloading for the learners, as far as they
+	 * are configured
+	 * 
+	 * @throws Exception
+	 */
+	public void initialiseLearnerServices() throws Exception {
+		if(useQueryCache) {
+			initialiseQueryCache();
+		}
+		initialiseJournal();
+		initialiseTimingReport();
+		startMetrics();
+		if(watchMessages) {
+			watchMessages();
+		}
+	}
+	
+	/**
+	 * Start collecting the timing of the received records, if a timing report file is provided. The report is written
+	 * when the connector exits.
+	 */
+	public void initialiseTimingReport() {
+		if(timingReportFile == null) {
+			return;
 		}
+		timingReport = new TimingReport();
+		
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				try(PrintWriter out = new PrintWriter(new FileWriter(timingReportFile))) {
+					timingReport.write(out);
+				} catch(IOException e) {
+					System.err.println("Could not write timing report: " + e.getMessage());
+				}
+			}
+		});
 	}
 	
 	/**
-	 * Send a message of the provided type and return the types of the response messages
+	 * Start serving the metrics and printing periodic summaries, if enabled
 	 * 
-	 * @param inputSymbol A string indicating which type of message to send
-	 * @return A string representation of the message types that were received
-	 * @throws Exception 
+	 * @throws IOException
 	 */
-	public String processInput(String inputSymbol) throws Exception {
-		// Upon receiving the special input symbol RESET, we reset the system
-		if(inputSymbol.equals(SYMBOL_RESET)) {
-			reset();
-			return "";			
+	public void startMetrics() throws IOException {
+		if(metricsPort > 0) {
+			new MetricsServer(metrics).start(metricsPort);
+			System.out.println("Serving metrics on http://localhost:" + metricsPort + MetricsServer.PATH);
+		}
+		if(metricsInterval > 0) {
+			metrics.startSummary(metricsInterval);
+		}
+	}
+	
+	/**
+	 * Print the query cache statistics and save the cache if a cache directory is provided
+	 */
+	public void saveQueryCache() {
+		if(queryCache == null) {
+			return;
 		}
 		
-		// Check if the socket is already closed, in which case we don't have to bother trying to send data out
-		if(state.getTlsContext().getTransportHandler().isClosed()) {
-			return SYMBOL_CONNECTION_CLOSED;
+		System.out.println(queryCache.getStatistics());
+		if(queryCacheFile != null) {
+			try {
+				queryCache.save(queryCacheFile);
+			} catch(IOException e) {
+				System.err.println("Could not save query cache: " + e.getMessage());
+			}
 		}
-
-		// Process the regular input symbols
-		if(messages.containsKey(inputSymbol)) {
-			sendMessage(messages.get(inputSymbol));
-		} else {
-			throw new Exception("Unknown input symbol: " + inputSymbol);
+	}
+	
+	/**
+	 * Start the embedded target and use it as target for all sessions. This has to be called before the connector is
+	 * initialised.
+	 * 
+	 * @throws Exception
+	 */
+	public void startEmbeddedTarget() throws Exception {
+		List<EmbeddedTarget.KeyExchange> keyExchanges = new ArrayList<>();
+		for(String keyExchangeString: embeddedKeyExchangeStrings) {
+			try {
+				keyExchanges.add(EmbeddedTarget.KeyExchange.valueOf(keyExchangeString));
+			}
+			catch(java.lang.IllegalArgumentException e) {
+				throw new Exception("Unknown key exchange " + keyExchangeString);
+			}
 		}
 		
-		return receiveMessages();
+		embeddedTarget = new EmbeddedTarget();
+		embeddedTarget.start(ProtocolVersion.fromString(protocolVersionString), keyExchanges, embeddedCipherSuiteStrings);
+		targetHostname = "localhost";
+		targetPort = embeddedTarget.getPort();
+		System.out.println("Embedded target listening on port " + targetPort + " with " + embeddedTarget.getEnabledCipherSuites().length + " cipher suites");
 	}
 	
 	/**
-	 * Start listening on the provided to port for a connection to provide input symbols and return output symbols. Only one connection is accepted at the moment.
+	 * Compute a key identifying the target, the configuration and the loaded messages, so cached outputs are only
+	 * reused for the same setup
 	 * 
-	 * @throws Exception 
+	 * @return Hex encoded SHA-256 hash of the setup
+	 * @throws Exception
 	 */
-	public void startListening() throws Exception {
-		ServerSocket serverSocket = new ServerSocket(listenPort);
-		System.out.println("Listening on port " + listenPort);
+	public String getConfigurationKey() throws Exception {
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		StringBuilder setup = new StringBuilder();
+		if(embeddedTarget != null) {
+			// The embedded target uses a different port every time it is started
+			setup.append("embedded:").append(embeddedKeyExchangeStrings).append(embeddedCipherSuiteStrings).append('\n');
+		} else if(differentialTargets != null) {
+			setup.append("differential:").append(differentialTargetStrings).append('\n');
+		} else if(replicas != null) {
+			setup.append(targetStrings).append('\n');
+		} else {
+			setup.append(targetHostname).append(':').append(targetPort).append('\n');
+		}
+		setup.append(protocolVersionString).append('\n');
+		setup.append(cipherSuiteStrings).append('\n');
+		setup.append(compressionMethodString).append('\n');
+		digest.update(setup.toString().getBytes(StandardCharsets.UTF_8));
 		
-	    Socket clientSocket = serverSocket.accept();
-	    clientSocket.setTcpNoDelay(true);
+		// Include the contents of all messages, sorted by name so the order in which they were loaded does not matter
+		for(String name: new TreeSet<>(loadedMessages.keySet())) {
+			digest.update(name.getBytes(StandardCharsets.UTF_8));
+			digest.update(loadedMessages.get(name).getSource());
+		}
 		
-	    PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true);
-	    BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-
-	    String input, output;
-	    
-	    while((input = in.readLine()) != null) {
-	        output = processInput(input);
-	        System.out.println(input + " / " + output);
-	        out.println(output);
-	        out.flush();
-	    }	    
-	    
-	    clientSocket.close();
-	    serverSocket.close();
+		StringBuilder key = new StringBuilder();
+		for(byte b: digest.digest()) {
+			key.append(String.format("%02x", b));
+		}
+		return key.toString();
 	}
 	
 	/**
@@ -401,44 +848,146 @@ public class TLSAttackerConnector {
 	 * @throws Exception
 	 */
 	public void loadMessages(String dirPath) throws Exception {
-        File dir = new File(dirPath);
-        
-        if(!dir.isDirectory()) {
-        	throw new Exception(dirPath + " is not a valid directory");
-        }
-        
-        // Get a list of all *.xml files in the provided directory 
-        File[] files = dir.listFiles(new FilenameFilter() {
-            public boolean accept(File dir, String name) {
-                return name.toLowerCase().endsWith(".xml");
-            }
-        });
-        
-        for(File file: files) {
-        	// Strip .xml from the end to get the message name
-        	String name = file.getName().substring(0, file.getName().length() - 4);
-        	
-        	// Read the workflow trace from the file
-			FileInputStream input = new FileInputStream(file.getAbsolutePath());
-			WorkflowTrace trace = WorkflowTraceSerializer.read(input);
-			
-        	messages.put(name, trace);
-        }
+		messageLoader = new MessageLoader(new File(dirPath), loaderThreads);
+		loadedMessages = messageLoader.load();
+	}
+	
+	/**
+	 * Reload the messages when a file in the message directory changes. Sessions switch to the new messages on their
+	 * next connection. Cached queries are discarded, as their outputs may depend on the changed messages.
+	 * 
+	 * @throws IOException
+	 */
+	public void watchMessages() throws IOException {
+		messageLoader.startWatching(this::reloadMessages);
+		System.out.println("Watching " + messageDir + " for changed messages");
+	}
+	
+	/**
+	 * Replace the loaded messages
+	 * 
+	 * @param messages The new messages by name
+	 */
+	synchronized void reloadMessages(Map<String, LoadedMessage> messages) {
+		Map<String, LoadedMessage> previous = loadedMessages;
+		loadedMessages = messages;
+		
+		List<String> changes = new ArrayList<>();
+		for(String name: new TreeSet<>(messages.keySet())) {
+			if(!previous.containsKey(name)) {
+				changes.add("+" + name);
+			} else if(previous.get(name) != messages.get(name)) {
+				changes.add("*" + name);
+			}
+		}
+		for(String name: new TreeSet<>(previous.keySet())) {
+			if(!messages.containsKey(name)) {
+				changes.add("-" + name);
+			}
+		}
+		System.out.println("Reloaded messages: " + String.join(" ", changes));
+		
+		if(queryCache != null) {
+			saveQueryCache();
+			try {
+				String key = getConfigurationKey();
+				queryCache.clear(key);
+				if(queryCacheDir != null) {
+					queryCacheFile = getQueryCacheFile(key);
+					if(queryCache.load(queryCacheFile)) {
+						System.out.println("Loaded query cache from " + queryCacheFile.getPath() + " with " + queryCache.getEntryCount() + " entries");
+					}
+				}
+			} catch(Exception e) {
+				System.err.println("Could not switch query cache: " + e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Parse a new trace from the source of a message
+	 * 
+	 * @param source Contents of the message file
+	 * @return The trace
+	 * @throws Exception
+	 */
+	public static WorkflowTrace parseMessage(byte[] source) throws Exception {
+		return WorkflowTraceSerializer.read(new ByteArrayInputStream(source));
+	}
+	
+	/**
+	 * Parse a new copy of a loaded message. WorkflowTrace.copy cannot be used for this, as it does not preserve
+	 * explicit value modifications.
+	 * 
+	 * @param name Name of the message
+	 * @return A new trace for the message, or null if no message with this name was loaded
+	 * @throws Exception
+	 */
+	public WorkflowTrace copyMessage(String name) throws Exception {
+		LoadedMessage message = loadedMessages.get(name);
+		if(message == null) {
+			return null;
+		}
+		return parseMessage(message.getSource());
 	}
 	
 	/**
 	 * @return A list of all loaded messages that can be used as input symbols
 	 */
 	public String[] listMessages() {
-		String[] list = new String[messages.size()];
-		int i = 0;
-		for(String name: messages.keySet()) {
-			list[i++] = name;
+		return loadedMessages.keySet().toArray(new String[0]);
+	}
+	
+	/**
+	 * Create a connector for a learner running in the same JVM, configured with the same arguments as on the command
+	 * line. The embedded target is started, the messages are loaded, the warm-up is executed and the learner services
+	 * are enabled as configured, but no port is opened. Open sessions with {@link #openSession()}.
+	 * 
+	 * @param argv Command line arguments
+	 * @return The connector
+	 * @throws Exception If the arguments are invalid, or the messages or target cannot be loaded or reached
+	 */
+	public static TLSAttackerConnector create(String ... argv) throws Exception {
+		TLSAttackerConnector connector = new TLSAttackerConnector();
+		JCommander.newBuilder().addObject(connector).build().parse(argv);
+		
+		if(connector.useEmbeddedTarget) {
+			connector.startEmbeddedTarget();
+		}
+		connector.initialise();
+		connector.loadMessages(connector.messageDir);
+		// Every learner gets its own session
+		connector.close();
+		
+		if(connector.warmupRounds > 0) {
+			new WarmUp(connector, connector.warmupTarget, connector.warmupRounds, connector.warmupTolerance).run();
+		}
+		connector.initialiseLearnerServices();
+		return connector;
+	}
+	
+	/**
+	 * Close the default session, save the query cache, write the journal and stop the embedded target. Sessions opened
+	 * with {@link #openSession()} should be closed before.
+	 * 
+	 * @throws IOException If the journal could not be written
+	 */
+	public void shutdown() throws IOException {
+		session.shutdown();
+		saveQueryCache();
+		try {
+			if(journal != null) {
+				journal.close();
+			}
+		} finally {
+			if(embeddedTarget != null) {
+				embeddedTarget.stop();
+			}
 		}
-		return list;
 	}
 	
 	public static void main(String ... argv) {
+		long mainStart = System.currentTimeMillis();
 		try {
 			TLSAttackerConnector connector = new TLSAttackerConnector();
 			
@@ -453,10 +1002,30 @@ public class TLSAttackerConnector {
                 return;
             }
             
+            if(connector.timingJournalFile != null) {
+            	TimingReport report = new TimingReport();
+            	long steps = QueryJournal.readTimings(new File(connector.timingJournalFile), report);
+            	try(PrintWriter out = connector.timingReportFile != null ? new PrintWriter(new FileWriter(connector.timingReportFile))
+            			: new PrintWriter(System.out)) {
+            		report.write(out);
+            	}
+            	System.err.println("Read the timing of " + steps + " input symbols from " + connector.timingJournalFile);
+            	return;
+            }
+            
+            if(connector.useEmbeddedTarget) {
+            	connector.startEmbeddedTarget();
+            }
+            
             // Initialise the connector after the arguments are set
             connector.initialise();
             
+            long loadStart = System.currentTimeMillis();
             connector.loadMessages(connector.messageDir);
+            long loadEnd = System.currentTimeMillis();
+            if(!connector.quiet) {
+            	System.out.println(connector.messageLoader.getStatistics());
+            }
             
             if(connector.listMessages) {
             	System.out.println("========================================");
@@ -470,7 +1039,7 @@ public class TLSAttackerConnector {
             if(connector.test) {
     			System.out.println("ClientHello: " + connector.processInput("ClientHello"));
 
-    			CipherSuite selectedCipherSuite = connector.state.getTlsContext().getSelectedCipherSuite();
+    			CipherSuite selectedCipherSuite = connector.session.getState().getTlsContext().getSelectedCipherSuite();
     			if(selectedCipherSuite == null) {
     				System.out.println("RSAClientKeyExchange: " + connector.processInput("RSAClientKeyExchange"));
     			}
@@ -488,21 +1057,68 @@ public class TLSAttackerConnector {
     			System.out.println("AlertWarningCloseNotify: " + connector.processInput("AlertWarningCloseNotify"));
             }
             else if(connector.testCipherSuites) {
-                for(CipherSuite cs: CipherSuite.values()) {
-                	List<CipherSuite> cipherSuites = new ArrayList<>();
-                	cipherSuites.add(cs);
-            		connector.config.setDefaultSelectedCipherSuite(cs);
-            		connector.config.setDefaultClientSupportedCiphersuites(cipherSuites);            		
-            		
-                	try {
-                    	connector.processInput("RESET");                		
-                		System.out.println(cs.name() + " " + connector.processInput("ClientHello"));
-                	} catch(java.lang.UnsupportedOperationException | java.lang.IllegalArgumentException e) {
-                		System.out.println(cs.name() + " UNSUPPORTED");                		
-                	}
-                }
+            	// Every CipherSuite is tested using its own session
+            	connector.close();
+
+            	CipherSuiteScanner scanner = new CipherSuiteScanner(connector, connector.scanThreads);
+            	List<CipherSuiteScanner.Result> results = scanner.scan(Arrays.asList(CipherSuite.values()));
+            	for(CipherSuiteScanner.Result result: results) {
+            		if(result.getStatus() == CipherSuiteScanner.Status.UNSUPPORTED) {
+            			System.out.println(result.getCipherSuite().name() + " UNSUPPORTED");
+            		} else {
+            			System.out.println(result.getCipherSuite().name() + " " + result.getResponse());
+            		}
+            	}
+
+            	if(connector.scanReport != null) {
+            		try(PrintWriter out = new PrintWriter(new FileWriter(connector.scanReport))) {
+            			CipherSuiteScanner.writeReport(results, out);
+            		}
+            	}
+            } else if(connector.generateLoad) {
+            	connector.close();
+            	connector.initialiseJournal();
+            	connector.initialiseTimingReport();
+            	connector.startMetrics();
+            	
+            	List<List<String>> words;
+            	try {
+            		words = connector.loadWordStrings.isEmpty() ? WarmUp.getWords(connector.listMessages())
+            				: LoadGenerator.parseWords(connector.loadWordStrings, connector.listMessages());
+            	} catch(IllegalArgumentException e) {
+            		throw new Exception(e.getMessage());
+            	}
+            	new LoadGenerator(connector, words, connector.loadSessions, connector.loadRate, connector.loadDuration).run();
+            	System.exit(0);
+            } else if(connector.replayFile != null) {
+            	connector.close();
+            	connector.initialiseJournal();
+            	connector.initialiseTimingReport();
+            	connector.startMetrics();
+            	
+            	int failed = new JournalReplay(connector, connector.replayThreads).replay(new File(connector.replayFile));
+            	// Allow scripts to detect regressions
+            	System.exit(failed > 0 ? 2 : 0);
             } else {
-            	connector.startListening();
+            	if(connector.warmupRounds > 0) {
+            		new WarmUp(connector, connector.warmupTarget, connector.warmupRounds, connector.warmupTolerance).run();
+            	}
+            	long warmupEnd = System.currentTimeMillis();
+            	if(connector.warmupOnly) {
+            		return;
+            	}
+            	
+            	connector.initialiseLearnerServices();
+            	
+            	long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+            	System.out.println(String.format("Startup: JVM %d ms, initialise %d ms, messages %d ms, warm-up %d ms, ready %d ms after JVM start",
+            			mainStart - jvmStart, loadStart - mainStart, loadEnd - loadStart, warmupEnd - loadEnd, System.currentTimeMillis() - jvmStart));
+            	
+            	if(connector.multiLearner) {
+            		connector.startServer();
+            	} else {
+            		connector.startListening();
+            	}
             }
 		} catch(Exception e) {
 			System.err.println("Error occured: " + e.getMessage());
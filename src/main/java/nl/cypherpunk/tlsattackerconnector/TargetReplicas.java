@@ -0,0 +1,344 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Equivalent instances of the target, over which the sessions of the connector are spread. It is shared by all
+ * sessions.
+ *
+ * A replica is dropped when connecting to it fails a number of times in a row, or when a number of its outputs
+ * diverged from the outputs of the other replicas for the same inputs. A replica that was dropped because it could not
+ * be reached is used again once the health check can connect to it. The last healthy replica is never dropped.
+ */
+public class TargetReplicas {
+	// Timeout in ms for connecting to a replica during a health check
+	static final int PROBE_TIMEOUT = 1000;
+	// Number of words of which the outputs are compared, after which the least recently executed words are forgotten
+	static final int MAX_COMPARED_WORDS = 10000;
+
+	/**
+	 * How a replica is selected for a new session
+	 */
+	public enum Scheduling {
+		/** Use every healthy replica in turn */
+		ROUND_ROBIN,
+		/** Use the healthy replica with the fewest sessions */
+		LEAST_LOADED
+	}
+
+	/**
+	 * A single instance of the target
+	 */
+	public static class Replica {
+		final String hostname;
+		final int port;
+		final AtomicInteger sessions = new AtomicInteger();
+		final AtomicLong connections = new AtomicLong();
+		final AtomicLong failures = new AtomicLong();
+		final AtomicLong divergences = new AtomicLong();
+		final AtomicInteger consecutiveFailures = new AtomicInteger();
+		volatile boolean healthy = true;
+		// Divergent replicas are not used again, even if they can be reached
+		volatile boolean divergent = false;
+
+		Replica(String hostname, int port) {
+			this.hostname = hostname;
+			this.port = port;
+		}
+
+		public String getHostname() {
+			return hostname;
+		}
+
+		public int getPort() {
+			return port;
+		}
+
+		public boolean isHealthy() {
+			return healthy;
+		}
+
+		@Override
+		public String toString() {
+			return hostname + ":" + port;
+		}
+	}
+
+	private final List<Replica> replicas;
+	private final Scheduling scheduling;
+	private final int maxFailures;
+	private final int maxDivergences;
+	private int next = 0;
+	// Outputs of every replica for recently executed words, by word
+	private final Map<String, WordOutputs> outputs = new LinkedHashMap<String, WordOutputs>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, WordOutputs> eldest) {
+			return size() > MAX_COMPARED_WORDS;
+		}
+	};
+
+	/**
+	 * Outputs the replicas produced for the last input symbol of a word
+	 */
+	private static class WordOutputs {
+		// Replicas that produced every output
+		final Map<String, Set<Replica>> replicas = new HashMap<>();
+		// Replicas that were already charged with a divergence for this word
+		final Set<Replica> diverged = new HashSet<>();
+	}
+
+	/**
+	 * @param targets Targets in the form host:port
+	 * @param scheduling How a replica is selected for a new session
+	 * @param maxFailures Number of failed connections in a row after which a replica is dropped
+	 * @param maxDivergences Number of diverging outputs after which a replica is dropped
+	 * @throws IllegalArgumentException If a target is not valid
+	 */
+	public TargetReplicas(List<String> targets, Scheduling scheduling, int maxFailures, int maxDivergences) {
+		List<Replica> parsed = parseTargets(targets);
+		if(parsed.isEmpty()) {
+			throw new IllegalArgumentException("No targets provided");
+		}
+		this.replicas = Collections.unmodifiableList(parsed);
+		this.scheduling = scheduling;
+		this.maxFailures = maxFailures;
+		this.maxDivergences = maxDivergences;
+	}
+
+	/**
+	 * Parse targets of the form host:port
+	 *
+	 * @param targets Targets to parse
+	 * @return A new replica for every target
+	 * @throws IllegalArgumentException If a target is not valid
+	 */
+	public static List<Replica> parseTargets(List<String> targets) {
+		List<Replica> parsed = new ArrayList<>();
+		for(String target: targets) {
+			int separator = target.lastIndexOf(':');
+			if(separator <= 0) {
+				throw new IllegalArgumentException("Invalid target " + target + ", expected host:port");
+			}
+			String hostname = target.substring(0, separator).trim();
+			// Allow IPv6 addresses in brackets
+			if(hostname.startsWith("[") && hostname.endsWith("]")) {
+				hostname = hostname.substring(1, hostname.length() - 1);
+			}
+			try {
+				parsed.add(new Replica(hostname, Integer.parseInt(target.substring(separator + 1).trim())));
+			} catch(NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid target " + target + ", expected host:port");
+			}
+		}
+		return parsed;
+	}
+
+	public List<Replica> getReplicas() {
+		return replicas;
+	}
+
+	/**
+	 * Select a healthy replica for a session, releasing the replica it used before
+	 *
+	 * @param previous Replica the session used before, which is avoided if another replica is healthy, or null
+	 * @return The selected replica
+	 * @throws IOException If no replica is healthy
+	 */
+	public synchronized Replica acquire(Replica previous) throws IOException {
+		if(previous != null) {
+			previous.sessions.decrementAndGet();
+		}
+
+		Replica selected = null;
+		for(int i = 0; i < replicas.size(); i++) {
+			Replica replica = replicas.get((next + i) % replicas.size());
+			if(!replica.healthy || (replica == previous && selected != null)) {
+				continue;
+			}
+			if(selected == null || selected == previous
+					|| (scheduling == Scheduling.LEAST_LOADED && replica.sessions.get() < selected.sessions.get())) {
+				selected = replica;
+			}
+			if(scheduling == Scheduling.ROUND_ROBIN && selected != previous) {
+				break;
+			}
+		}
+		if(selected == null) {
+			throw new IOException("No healthy target replica left");
+		}
+
+		next = (replicas.indexOf(selected) + 1) % replicas.size();
+		selected.sessions.incrementAndGet();
+		return selected;
+	}
+
+	/**
+	 * @param replica Replica that is no longer used by a session
+	 */
+	public void release(Replica replica) {
+		replica.sessions.decrementAndGet();
+	}
+
+	/**
+	 * @param replica Replica a connection was set up with
+	 */
+	public void recordConnection(Replica replica) {
+		replica.connections.incrementAndGet();
+		replica.consecutiveFailures.set(0);
+	}
+
+	/**
+	 * @param replica Replica that could not be connected to
+	 * @param e Reason connecting failed
+	 */
+	public void recordFailure(Replica replica, IOException e) {
+		replica.failures.incrementAndGet();
+		if(replica.consecutiveFailures.incrementAndGet() >= maxFailures) {
+			drop(replica, "connecting failed " + replica.consecutiveFailures.get() + " times in a row (" + e.getMessage() + ")");
+		}
+	}
+
+	/**
+	 * Record the output of a replica for the last input symbol of a word, and compare it with the outputs of the other
+	 * replicas for the same word. A replica diverges if it produced different outputs for the word itself, or if its
+	 * output differs from an output that more replicas agree on. If two replicas disagree without a majority, neither
+	 * is charged until another replica executes the word.
+	 *
+	 * @param replica Replica that produced the output
+	 * @param word Input symbols executed on the connection since it was set up
+	 * @param output Output for the last input symbol
+	 */
+	public void recordOutput(Replica replica, List<String> word, String output) {
+		if(replicas.size() < 2) {
+			return;
+		}
+		List<Replica> diverged = new ArrayList<>();
+		synchronized(outputs) {
+			WordOutputs wordOutputs = outputs.computeIfAbsent(String.join(TLSAttackerConnector.WORD_DELIMITER, word), w -> new WordOutputs());
+			for(Map.Entry<String, Set<Replica>> entry: wordOutputs.replicas.entrySet()) {
+				if(!entry.getKey().equals(output) && entry.getValue().contains(replica) && wordOutputs.diverged.add(replica)) {
+					diverged.add(replica);
+				}
+			}
+			wordOutputs.replicas.computeIfAbsent(output, o -> new HashSet<>()).add(replica);
+
+			// Find the output most replicas agree on, if there is one
+			Set<Replica> majority = null;
+			boolean tie = false;
+			for(Set<Replica> agreeing: wordOutputs.replicas.values()) {
+				if(majority == null || agreeing.size() > majority.size()) {
+					majority = agreeing;
+					tie = false;
+				} else if(agreeing.size() == majority.size()) {
+					tie = true;
+				}
+			}
+			if(!tie && majority.size() > 1) {
+				for(Set<Replica> agreeing: wordOutputs.replicas.values()) {
+					for(Replica other: agreeing) {
+						if(agreeing != majority && !majority.contains(other) && wordOutputs.diverged.add(other)) {
+							diverged.add(other);
+						}
+					}
+				}
+			}
+		}
+
+		for(Replica divergent: diverged) {
+			System.out.println("Target replica " + divergent + " diverged for " + String.join(TLSAttackerConnector.WORD_DELIMITER, word));
+			recordDivergence(divergent);
+		}
+	}
+
+	/**
+	 * @param replica Replica that produced an output diverging from the other replicas
+	 */
+	private void recordDivergence(Replica replica) {
+		if(replica.divergences.incrementAndGet() >= maxDivergences) {
+			replica.divergent = true;
+			drop(replica, replica.divergences.get() + " outputs diverged from the other replicas");
+		}
+	}
+
+	private synchronized void drop(Replica replica, String reason) {
+		if(!replica.healthy) {
+			return;
+		}
+		for(Replica other: replicas) {
+			if(other != replica && other.healthy) {
+				replica.healthy = false;
+				System.out.println("Dropping target replica " + replica + ": " + reason);
+				return;
+			}
+		}
+		System.out.println("Keeping last healthy target replica " + replica + ": " + reason);
+	}
+
+	/**
+	 * Regularly check in the background whether the replicas can be reached. Replicas that could not be reached are
+	 * used again once they can.
+	 *
+	 * @param interval Interval in seconds
+	 */
+	public void startHealthCheck(long interval) {
+		ScheduledExecutorService scheduler = ConnectorExecutors.createScheduled("replica-health");
+		scheduler.scheduleAtFixedRate(() -> {
+			for(Replica replica: replicas) {
+				// An exception would cancel all further health checks
+				try {
+					checkHealth(replica);
+				} catch(RuntimeException e) {
+					System.err.println("Could not check target replica " + replica + ": " + e);
+				}
+			}
+		}, interval, interval, TimeUnit.SECONDS);
+	}
+
+	private void checkHealth(Replica replica) {
+		if(replica.divergent) {
+			return;
+		}
+		try(Socket socket = new Socket()) {
+			socket.connect(new InetSocketAddress(replica.hostname, replica.port), PROBE_TIMEOUT);
+			// Close with a RST, so health checks do not leave ports in TIME_WAIT
+			socket.setSoLinger(true, 0);
+		} catch(IOException e) {
+			if(replica.healthy) {
+				recordFailure(replica, e);
+			}
+			return;
+		}
+		replica.consecutiveFailures.set(0);
+		if(!replica.healthy) {
+			replica.healthy = true;
+			System.out.println("Target replica " + replica + " is reachable again");
+		}
+	}
+
+	public String getStatistics() {
+		StringBuilder statistics = new StringBuilder("Target replicas:");
+		for(Replica replica: replicas) {
+			statistics.append(String.format(" %s %s %d sessions %d connections %d failures %d divergences;", replica,
+					replica.healthy ? "healthy" : "dropped", replica.sessions.get(), replica.connections.get(),
+					replica.failures.get(), replica.divergences.get()));
+		}
+		statistics.setLength(statistics.length() - 1);
+		return statistics.toString();
+	}
+}
@@ -0,0 +1,96 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Distributions of the response timing of every input symbol in every state, where a state is identified by the input
+ * symbols executed since the last reset. Shared by all sessions, and written as CSV so the timing of different builds
+ * of a target can be compared.
+ */
+public class TimingReport {
+	static final String HEADER = "state,symbol,count,records,send_mean_us,first_mean_us,first_p50_us,first_p90_us,first_p99_us,last_mean_us,last_p50_us,last_p90_us,last_p99_us,last_max_us";
+
+	private final Map<String, Map<String, Entry>> states = new ConcurrentHashMap<>();
+
+	/**
+	 * Timing of a single input symbol in a single state
+	 */
+	private static class Entry {
+		final AtomicLong count = new AtomicLong();
+		final AtomicLong records = new AtomicLong();
+		final AtomicLong send = new AtomicLong();
+		final LatencyHistogram first = new LatencyHistogram();
+		final LatencyHistogram last = new LatencyHistogram();
+	}
+
+	/**
+	 * Record the timing of an executed input symbol
+	 *
+	 * @param prefix Input symbols executed before since the last reset
+	 * @param symbol The executed input symbol
+	 * @param timing The send duration followed by the latency of every received record in nanoseconds, as returned by
+	 *        {@link RecordTiming#toArray()}
+	 */
+	public void record(List<String> prefix, String symbol, long[] timing) {
+		Entry entry = states.computeIfAbsent(String.join(TLSAttackerConnector.WORD_DELIMITER, prefix), k -> new ConcurrentHashMap<>())
+				.computeIfAbsent(symbol, k -> new Entry());
+		entry.count.incrementAndGet();
+		entry.send.addAndGet(timing[0]);
+		// Responses without records only count towards the send duration
+		if(timing.length > 1) {
+			entry.records.addAndGet(timing.length - 1);
+			entry.first.record(timing[1]);
+			entry.last.record(timing[timing.length - 1]);
+		}
+	}
+
+	/**
+	 * Record the timing of an executed input symbol
+	 *
+	 * @param prefix Input symbols executed before since the last reset
+	 * @param symbol The executed input symbol
+	 * @param timing Timing captured while executing the symbol
+	 */
+	public void record(List<String> prefix, String symbol, RecordTiming timing) {
+		if(timing.isSent()) {
+			record(prefix, symbol, timing.toArray());
+		}
+	}
+
+	/**
+	 * Write the distributions as CSV, sorted by state and symbol
+	 *
+	 * @param out Writer to write to
+	 */
+	public void write(PrintWriter out) {
+		out.println(HEADER);
+		for(Map.Entry<String, Map<String, Entry>> state: new TreeMap<>(states).entrySet()) {
+			for(Map.Entry<String, Entry> symbol: new TreeMap<>(state.getValue()).entrySet()) {
+				Entry entry = symbol.getValue();
+				long count = entry.count.get();
+				out.println(String.join(",", state.getKey(), symbol.getKey(), Long.toString(count), Long.toString(entry.records.get()),
+						micros(entry.send.get() / Math.max(1, count)), mean(entry.first), percentile(entry.first, 50), percentile(entry.first, 90),
+						percentile(entry.first, 99), mean(entry.last), percentile(entry.last, 50), percentile(entry.last, 90),
+						percentile(entry.last, 99), entry.last.getCount() == 0 ? "" : micros(entry.last.getMax())));
+			}
+		}
+		out.flush();
+	}
+
+	private static String mean(LatencyHistogram histogram) {
+		return histogram.getCount() == 0 ? "" : micros(histogram.getTotal() / histogram.getCount());
+	}
+
+	private static String percentile(LatencyHistogram histogram, double percentile) {
+		return histogram.getCount() == 0 ? "" : micros(histogram.getPercentile(percentile));
+	}
+
+	private static String micros(long nanos) {
+		return Long.toString(nanos / 1000);
+	}
+}
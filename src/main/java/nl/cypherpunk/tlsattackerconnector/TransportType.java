@@ -0,0 +1,15 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+/**
+ * Transport handler implementations that can be used to connect to the target
+ */
+public enum TransportType {
+	/**
+	 * Blocking socket with buffered streams, see {@link ConnectorTransportHandler}
+	 */
+	STREAM,
+	/**
+	 * Non-blocking socket channel with pooled buffers, see {@link NioTransportHandler}
+	 */
+	NIO
+}
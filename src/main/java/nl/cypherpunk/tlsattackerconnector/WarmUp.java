@@ -0,0 +1,145 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import de.rub.nds.tlsattacker.core.constants.ProtocolVersion;
+
+/**
+ * Executes handshakes built from the loaded messages before the connector accepts learners, so class loading, JAXB,
+ * the JIT compiler and the first connections are paid for up front. Rounds of the same words are executed until the
+ * duration of a round settles or the maximum number of rounds is reached.
+ */
+public class WarmUp {
+	/**
+	 * Targets the warm-up handshakes can be executed against
+	 */
+	public enum Target {
+		/** The target used by the learners */
+		TARGET,
+		/** A temporary embedded target, so the target used by the learners does not see the warm-up */
+		EMBEDDED
+	}
+
+	// Symbols of a complete handshake, in which the key exchange is added after the first symbol
+	static final List<String> HANDSHAKE = Arrays.asList("ClientHello", "ChangeCipherSpec", "Finished", "ApplicationData", "AlertWarningCloseNotify");
+	static final String KEY_EXCHANGE_SUFFIX = "ClientKeyExchange";
+
+	private final TLSAttackerConnector connector;
+	private final Target target;
+	private final int maxRounds;
+	private final double tolerance;
+
+	/**
+	 * @param connector Connector providing the settings and the loaded messages
+	 * @param target Target to execute the handshakes against
+	 * @param maxRounds Maximum number of rounds
+	 * @param tolerance Relative difference between the durations of two consecutive rounds at which the duration is
+	 *        considered settled, for example 0.1
+	 */
+	public WarmUp(TLSAttackerConnector connector, Target target, int maxRounds, double tolerance) {
+		this.connector = connector;
+		this.target = target;
+		this.maxRounds = maxRounds;
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Get the words executed in every round: a complete handshake for every loaded key exchange, and every loaded
+	 * message after a ClientHello, so every message is compiled and the usual alerts are received
+	 *
+	 * @param messages Names of the loaded messages
+	 * @return The words
+	 */
+	public static List<List<String>> getWords(String[] messages) {
+		List<String> names = new ArrayList<>(Arrays.asList(messages));
+		names.sort(null);
+
+		List<List<String>> words = new ArrayList<>();
+		for(String name: names) {
+			if(!name.endsWith(KEY_EXCHANGE_SUFFIX)) {
+				continue;
+			}
+			List<String> word = new ArrayList<>();
+			for(String symbol: HANDSHAKE) {
+				if(names.contains(symbol)) {
+					word.add(symbol);
+				}
+			}
+			word.add(Math.min(1, word.size()), name);
+			words.add(word);
+		}
+		for(String name: names) {
+			words.add(names.contains(HANDSHAKE.get(0)) ? Arrays.asList(HANDSHAKE.get(0), name) : Arrays.asList(name));
+		}
+		return words;
+	}
+
+	/**
+	 * Run the warm-up
+	 *
+	 * @return The number of rounds that were executed
+	 * @throws Exception If the warm-up target cannot be started or connected to
+	 */
+	public int run() throws Exception {
+		List<List<String>> words = getWords(connector.listMessages());
+		if(words.isEmpty()) {
+			return 0;
+		}
+
+		EmbeddedTarget embeddedTarget = null;
+		ConnectorSession session;
+		if(target == Target.EMBEDDED) {
+			embeddedTarget = new EmbeddedTarget();
+			Set<EmbeddedTarget.KeyExchange> keyExchanges = EnumSet.allOf(EmbeddedTarget.KeyExchange.class);
+			embeddedTarget.start(ProtocolVersion.fromString(connector.protocolVersionString), keyExchanges, new ArrayList<>());
+			session = connector.createTargetSession(connector.config, "localhost", embeddedTarget.getPort());
+			session.initialiseSession();
+		} else {
+			session = connector.createSession();
+		}
+
+		int rounds = 0;
+		try {
+			long previous = -1;
+			while(rounds < maxRounds) {
+				long start = System.nanoTime();
+				int failed = 0;
+				for(List<String> word: words) {
+					try {
+						session.runWord(word);
+					} catch(Exception e) {
+						// Responses do not matter, but a failing target makes the warm-up pointless
+						failed++;
+					}
+				}
+				long duration = System.nanoTime() - start;
+				rounds++;
+				System.out.println(String.format("Warm-up round %d: %d words in %d ms%s", rounds, words.size(), duration / 1000000,
+						failed > 0 ? ", " + failed + " failed" : ""));
+				if(failed == words.size()) {
+					throw new Exception("All warm-up words failed");
+				}
+
+				if(previous > 0 && Math.abs(duration - previous) <= tolerance * previous) {
+					break;
+				}
+				previous = duration;
+			}
+		} finally {
+			session.shutdown();
+			if(embeddedTarget != null) {
+				embeddedTarget.stop();
+			}
+			// The warm-up should not influence the timeouts and metrics of the learners
+			if(connector.adaptiveTimeout != null) {
+				connector.adaptiveTimeout.reset();
+			}
+			connector.metrics.reset();
+		}
+		return rounds;
+	}
+}
@@ -0,0 +1,86 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class AdaptiveTimeoutTest {
+	static final long TIMEOUT = 1000;
+	static final List<String> NO_PREFIX = Collections.emptyList();
+	static final List<String> PREFIX = Arrays.asList("ClientHello");
+	static final String OUTPUT = "SERVER_HELLO|CERTIFICATE|SERVER_HELLO_DONE";
+	// 2 ms, which results in a timeout of 5 + 2 * 2 ms
+	static final long LATENCY = 2000000;
+	static final long REDUCED = 9;
+
+	private static AdaptiveTimeout createTimeout() {
+		return new AdaptiveTimeout(TIMEOUT, 5, 99, 2, 3);
+	}
+
+	private static void observe(AdaptiveTimeout adaptiveTimeout, List<String> prefix, String symbol, long latency, String output, int times) {
+		for(int i = 0; i < times; i++) {
+			adaptiveTimeout.record(prefix, symbol, adaptiveTimeout.getTimeout(prefix, symbol), latency, output);
+		}
+	}
+
+	@Test
+	void globalTimeoutIsUsedUntilEnoughObservations() {
+		AdaptiveTimeout adaptiveTimeout = createTimeout();
+		observe(adaptiveTimeout, NO_PREFIX, "ClientHello", LATENCY, OUTPUT, 2);
+		assertEquals(TIMEOUT, adaptiveTimeout.getTimeout(NO_PREFIX, "ClientHello"));
+
+		observe(adaptiveTimeout, NO_PREFIX, "ClientHello", LATENCY, OUTPUT, 1);
+		assertEquals(REDUCED, adaptiveTimeout.getTimeout(NO_PREFIX, "ClientHello"));
+	}
+
+	@Test
+	void unknownPrefixFallsBackToTheSymbol() {
+		AdaptiveTimeout adaptiveTimeout = createTimeout();
+		observe(adaptiveTimeout, NO_PREFIX, "ClientHello", LATENCY, OUTPUT, 3);
+		assertEquals(REDUCED, adaptiveTimeout.getTimeout(PREFIX, "ClientHello"));
+	}
+
+	@Test
+	void differentOutputFallsBackToTheGlobalTimeout() {
+		AdaptiveTimeout adaptiveTimeout = createTimeout();
+		observe(adaptiveTimeout, PREFIX, "ClientHello", LATENCY, OUTPUT, 3);
+		assertEquals(REDUCED, adaptiveTimeout.getTimeout(PREFIX, "ClientHello"));
+
+		observe(adaptiveTimeout, PREFIX, "ClientHello", LATENCY, "ALERT_FATAL_UNEXPECTED_MESSAGE", 1);
+		assertEquals(TIMEOUT, adaptiveTimeout.getTimeout(PREFIX, "ClientHello"));
+		assertEquals(TIMEOUT, adaptiveTimeout.getTimeout(NO_PREFIX, "ClientHello"));
+	}
+
+	@Test
+	void lateResponseFallsBackToTheGlobalTimeout() {
+		AdaptiveTimeout adaptiveTimeout = createTimeout();
+		observe(adaptiveTimeout, NO_PREFIX, "ClientHello", LATENCY, OUTPUT, 3);
+
+		// The response arrived just before the reduced timeout, so it may have been cut short
+		adaptiveTimeout.record(NO_PREFIX, "ClientHello", REDUCED, (REDUCED - 1) * 1000000, OUTPUT);
+		assertEquals(TIMEOUT, adaptiveTimeout.getTimeout(NO_PREFIX, "ClientHello"));
+	}
+
+	@Test
+	void unansweredSymbolUsesTheLatencyOfAllResponses() {
+		AdaptiveTimeout adaptiveTimeout = createTimeout();
+		observe(adaptiveTimeout, NO_PREFIX, "Finished", -1, "-", 3);
+		// Without responses there is nothing to derive a timeout from
+		assertEquals(TIMEOUT, adaptiveTimeout.getTimeout(NO_PREFIX, "Finished"));
+
+		observe(adaptiveTimeout, NO_PREFIX, "ClientHello", LATENCY, OUTPUT, 3);
+		assertEquals(REDUCED, adaptiveTimeout.getTimeout(NO_PREFIX, "Finished"));
+	}
+
+	@Test
+	void resetForgetsObservations() {
+		AdaptiveTimeout adaptiveTimeout = createTimeout();
+		observe(adaptiveTimeout, NO_PREFIX, "ClientHello", LATENCY, OUTPUT, 3);
+		adaptiveTimeout.reset();
+		assertEquals(TIMEOUT, adaptiveTimeout.getTimeout(NO_PREFIX, "ClientHello"));
+	}
+}
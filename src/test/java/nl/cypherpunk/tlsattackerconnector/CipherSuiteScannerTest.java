@@ -0,0 +1,58 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import de.rub.nds.tlsattacker.core.constants.CipherSuite;
+
+class CipherSuiteScannerTest {
+	private static TLSAttackerConnector connector;
+
+	@BeforeAll
+	static void startTarget() throws Exception {
+		connector = new TLSAttackerConnector();
+		connector.startEmbeddedTarget();
+		connector.initialise();
+		connector.loadMessages(connector.messageDir);
+		connector.close();
+	}
+
+	@AfterAll
+	static void stopTarget() throws Exception {
+		connector.embeddedTarget.stop();
+	}
+
+	private static String describe(CipherSuiteScanner.Result result) {
+		return result.getCipherSuite() + " " + result.getStatus() + " " + result.getResponse();
+	}
+
+	@Test
+	void concurrentScanMatchesSerialScan() throws Exception {
+		List<CipherSuite> cipherSuites = new ArrayList<>();
+		for(CipherSuite cipherSuite: CipherSuite.values()) {
+			if(cipherSuite.name().contains("_AES_")) {
+				cipherSuites.add(cipherSuite);
+			}
+		}
+
+		List<CipherSuiteScanner.Result> serial = new CipherSuiteScanner(connector, 1).scan(cipherSuites);
+		List<CipherSuiteScanner.Result> concurrent = new CipherSuiteScanner(connector, 8).scan(cipherSuites);
+
+		int supported = 0;
+		for(int i = 0; i < cipherSuites.size(); i++) {
+			assertEquals(describe(serial.get(i)), describe(concurrent.get(i)));
+			if(serial.get(i).getStatus() == CipherSuiteScanner.Status.SUPPORTED) {
+				supported++;
+			}
+		}
+		assertTrue(supported > 0);
+		assertTrue(supported < cipherSuites.size());
+	}
+}
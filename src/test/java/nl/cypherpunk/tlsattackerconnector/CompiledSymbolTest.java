@@ -0,0 +1,52 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import de.rub.nds.tlsattacker.core.exceptions.WorkflowExecutionException;
+import de.rub.nds.tlsattacker.core.state.State;
+import de.rub.nds.tlsattacker.core.workflow.WorkflowTrace;
+import de.rub.nds.tlsattacker.core.workflow.action.TlsAction;
+
+class CompiledSymbolTest {
+	/**
+	 * Action that fails when it is executed
+	 */
+	static class FailingAction extends TlsAction {
+		private static final long serialVersionUID = 1L;
+
+		int resets = 0;
+
+		@Override
+		public void execute(State state) throws WorkflowExecutionException {
+			throw new WorkflowExecutionException("No connection");
+		}
+
+		@Override
+		public void reset() {
+			resets++;
+		}
+
+		@Override
+		public boolean executedAsPlanned() {
+			return false;
+		}
+	}
+
+	@Test
+	void failedActionIsReportedAndReset() {
+		FailingAction action = new FailingAction();
+		WorkflowTrace trace = new WorkflowTrace();
+		trace.addTlsAction(action);
+		CompiledSymbol symbol = new CompiledSymbol("ClientHello", trace);
+
+		IOException e = assertThrows(IOException.class, () -> symbol.execute(null));
+		assertTrue(e.getMessage().contains("ClientHello"), e.getMessage());
+		assertEquals(1, action.resets);
+	}
+}
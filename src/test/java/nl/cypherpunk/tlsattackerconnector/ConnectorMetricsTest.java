@@ -0,0 +1,51 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+class ConnectorMetricsTest {
+	private static ConnectorMetrics createMetrics() {
+		TLSAttackerConnector connector = new TLSAttackerConnector();
+		connector.loadedMessages = Collections.singletonMap("ClientHello", new LoadedMessage(new byte[0], null));
+		return connector.metrics;
+	}
+
+	@Test
+	void unknownSymbolsShareAHistogram() {
+		ConnectorMetrics metrics = createMetrics();
+		metrics.recordSymbol("ClientHello", 1000000);
+		metrics.recordSymbol(TLSAttackerConnector.SYMBOL_RESET, 1000000);
+		for(int i = 0; i < 100; i++) {
+			metrics.recordSymbol("Garbage" + i, 1000000);
+		}
+
+		StringBuilder out = new StringBuilder();
+		metrics.writePrometheus(out);
+		String prometheus = out.toString();
+		assertTrue(prometheus.contains("tlsconnector_symbol_seconds_count{symbol=\"ClientHello\"} 1\n"), prometheus);
+		assertTrue(prometheus.contains("tlsconnector_symbol_seconds_count{symbol=\"RESET\"} 1\n"), prometheus);
+		assertTrue(prometheus.contains("tlsconnector_symbol_seconds_count{symbol=\"unknown\"} 100\n"), prometheus);
+		assertFalse(prometheus.contains("Garbage"), prometheus);
+		assertEquals(102, metrics.getHistogram(ConnectorMetrics.Phase.QUERY).getCount());
+	}
+
+	@Test
+	void resetDiscardsRecordedMetrics() {
+		ConnectorMetrics metrics = createMetrics();
+		metrics.recordSymbol("ClientHello", 1000000);
+		metrics.addBytesIn(1024);
+		metrics.reset();
+
+		assertEquals(0, metrics.getHistogram(ConnectorMetrics.Phase.QUERY).getCount());
+		assertEquals(0, metrics.getHistogram(ConnectorMetrics.Phase.QUERY).getMax());
+		StringBuilder out = new StringBuilder();
+		metrics.writePrometheus(out);
+		assertFalse(out.toString().contains("symbol=\"ClientHello\""), out.toString());
+		assertTrue(out.toString().contains("tlsconnector_bytes_received_total 0\n"), out.toString());
+	}
+}
@@ -0,0 +1,61 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class ConnectorSessionTest {
+	private static LoadedMessage load(String name) throws Exception {
+		return new LoadedMessage(Files.readAllBytes(new File("messages", name + ".xml").toPath()), null);
+	}
+
+	@Test
+	void symbolsAreCompiledOnFirstUse() throws Exception {
+		TLSAttackerConnector connector = new TLSAttackerConnector();
+		Map<String, LoadedMessage> messages = new HashMap<>();
+		messages.put("ClientHello", load("ClientHello"));
+		messages.put("Finished", load("Finished"));
+		connector.loadedMessages = messages;
+
+		ConnectorSession session = new ConnectorSession(connector, null);
+		session.updateMessages();
+		assertEquals(0, session.symbols.size());
+
+		CompiledSymbol clientHello = session.getSymbol("ClientHello");
+		assertNotNull(clientHello);
+		assertSame(clientHello, session.getSymbol("ClientHello"));
+		assertNull(session.getSymbol("ServerHello"));
+		assertEquals(1, session.symbols.size());
+	}
+
+	@Test
+	void changedMessagesAreCompiledAgain() throws Exception {
+		TLSAttackerConnector connector = new TLSAttackerConnector();
+		Map<String, LoadedMessage> messages = new HashMap<>();
+		messages.put("ClientHello", load("ClientHello"));
+		messages.put("Finished", load("Finished"));
+		connector.loadedMessages = messages;
+
+		ConnectorSession session = new ConnectorSession(connector, null);
+		session.updateMessages();
+		CompiledSymbol clientHello = session.getSymbol("ClientHello");
+		CompiledSymbol finished = session.getSymbol("Finished");
+
+		Map<String, LoadedMessage> reloaded = new HashMap<>(messages);
+		reloaded.put("Finished", load("Finished"));
+		connector.loadedMessages = reloaded;
+		session.updateMessages();
+		assertEquals(1, session.symbols.size());
+		assertSame(clientHello, session.getSymbol("ClientHello"));
+		assertNotSame(finished, session.getSymbol("Finished"));
+	}
+}
@@ -0,0 +1,49 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.junit.jupiter.api.Test;
+
+class ConnectorTransportHandlerTest {
+	// Two warning alerts in separate records
+	static final byte[] ALERTS = {0x15, 0x03, 0x03, 0x00, 0x02, 0x01, 0x00, 0x15, 0x03, 0x03, 0x00, 0x02, 0x01, 0x00};
+
+	@Test
+	void recordsAreTimedPerFetchInTimeoutMode() throws Exception {
+		try(ServerSocket server = new ServerSocket(0)) {
+			ConnectorTransportHandler transportHandler = new ConnectorTransportHandler(500, "localhost", server.getLocalPort());
+			RecordTiming recordTiming = new RecordTiming();
+			transportHandler.setRecordTiming(recordTiming);
+			transportHandler.initialize();
+
+			try(Socket peer = server.accept()) {
+				OutputStream out = peer.getOutputStream();
+
+				out.write(ALERTS);
+				out.flush();
+				recordTiming.start();
+				assertArrayEquals(ALERTS, transportHandler.fetchData());
+				assertEquals(2, recordTiming.getRecordCount());
+
+				// A record split over two responses is timed when it is complete
+				out.write(ALERTS, 0, 3);
+				out.flush();
+				recordTiming.start();
+				assertEquals(3, transportHandler.fetchData().length);
+				assertEquals(0, recordTiming.getRecordCount());
+				out.write(ALERTS, 3, ALERTS.length - 3);
+				out.flush();
+				recordTiming.start();
+				assertEquals(ALERTS.length - 3, transportHandler.fetchData().length);
+				assertEquals(2, recordTiming.getRecordCount());
+			} finally {
+				transportHandler.closeConnection();
+			}
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+class DifferentialSessionTest {
+	@Test
+	void messagesAreNotCompiledForTheCombinedSession() {
+		TLSAttackerConnector connector = new TLSAttackerConnector();
+		// The source is not a valid trace, so compiling it would fail
+		connector.loadedMessages = Collections.singletonMap("ClientHello", new LoadedMessage(new byte[0], null));
+
+		DifferentialSession session = new DifferentialSession(connector, null, Collections.emptyList());
+		session.updateMessages();
+		assertSame(connector.loadedMessages, session.loadedMessages);
+		assertEquals(0, session.symbols.size());
+	}
+}
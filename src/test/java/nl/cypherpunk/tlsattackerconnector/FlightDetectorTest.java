@@ -0,0 +1,150 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class FlightDetectorTest {
+	/**
+	 * Build a TLS 1.2 record
+	 */
+	private static byte[] record(int contentType, byte[] fragment) {
+		ByteArrayOutputStream record = new ByteArrayOutputStream();
+		record.write(contentType);
+		record.write(3);
+		record.write(3);
+		record.write(fragment.length >> 8);
+		record.write(fragment.length);
+		record.write(fragment, 0, fragment.length);
+		return record.toByteArray();
+	}
+
+	/**
+	 * Build a handshake message with an empty body of the provided length
+	 */
+	private static byte[] handshake(int type, int length) {
+		byte[] message = new byte[FlightDetector.HANDSHAKE_HEADER_LENGTH + length];
+		message[0] = (byte) type;
+		message[1] = (byte) (length >> 16);
+		message[2] = (byte) (length >> 8);
+		message[3] = (byte) length;
+		return message;
+	}
+
+	private static byte[] concat(byte[] ... parts) {
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		for(byte[] part: parts) {
+			data.write(part, 0, part.length);
+		}
+		return data.toByteArray();
+	}
+
+	static final byte[] SERVER_HELLO = record(FlightDetector.CONTENT_TYPE_HANDSHAKE, handshake(2, 70));
+	static final byte[] SERVER_HELLO_DONE = record(FlightDetector.CONTENT_TYPE_HANDSHAKE, handshake(FlightDetector.HANDSHAKE_TYPE_SERVER_HELLO_DONE, 0));
+	static final byte[] CHANGE_CIPHER_SPEC = record(FlightDetector.CONTENT_TYPE_CHANGE_CIPHER_SPEC, new byte[] {1});
+	static final byte[] ALERT = record(FlightDetector.CONTENT_TYPE_ALERT, new byte[] {2, 10});
+
+	@Test
+	void flightEndsWithServerHelloDone() {
+		FlightDetector detector = new FlightDetector();
+		detector.update(SERVER_HELLO, 0, SERVER_HELLO.length);
+		assertFalse(detector.isFlightComplete());
+		detector.update(SERVER_HELLO_DONE, 0, SERVER_HELLO_DONE.length);
+		assertTrue(detector.isFlightComplete());
+		assertFalse(detector.isAlertReceived());
+		assertEquals(2, detector.getCompletedRecords());
+	}
+
+	@Test
+	void fragmentedRecordsAreReassembled() {
+		FlightDetector detector = new FlightDetector();
+		byte[] flight = concat(SERVER_HELLO, SERVER_HELLO_DONE);
+
+		// Feed a single byte at a time, so every header is split
+		for(int i = 0; i < flight.length; i++) {
+			assertFalse(detector.isFlightComplete());
+			detector.update(ByteBuffer.wrap(flight, i, 1));
+			assertEquals(i == SERVER_HELLO.length - 1 || i == flight.length - 1, detector.isAtRecordBoundary());
+		}
+		assertTrue(detector.isFlightComplete());
+		assertEquals(2, detector.getCompletedRecords());
+	}
+
+	@Test
+	void handshakeMessageSpanningRecordsIsReassembled() {
+		FlightDetector detector = new FlightDetector();
+		byte[] serverHelloDone = handshake(FlightDetector.HANDSHAKE_TYPE_SERVER_HELLO_DONE, 0);
+		byte[] first = record(FlightDetector.CONTENT_TYPE_HANDSHAKE, concat(handshake(11, 8), new byte[] {0, 0}));
+		byte[] second = record(FlightDetector.CONTENT_TYPE_HANDSHAKE, concat(new byte[6], serverHelloDone));
+
+		detector.update(first, 0, first.length);
+		assertFalse(detector.isFlightComplete());
+		assertTrue(detector.isAtRecordBoundary());
+		detector.update(second, 0, second.length);
+		assertTrue(detector.isFlightComplete());
+	}
+
+	@Test
+	void encryptedFinishedAfterChangeCipherSpecEndsFlight() {
+		FlightDetector detector = new FlightDetector();
+		detector.update(CHANGE_CIPHER_SPEC, 0, CHANGE_CIPHER_SPEC.length);
+		assertFalse(detector.isFlightComplete());
+
+		// The encrypted contents must not be parsed as a handshake header
+		byte[] finished = record(FlightDetector.CONTENT_TYPE_HANDSHAKE, new byte[] {FlightDetector.HANDSHAKE_TYPE_SERVER_HELLO_DONE, 0, 0, 50, 1, 2, 3, 4});
+		detector.update(finished, 0, finished.length);
+		assertTrue(detector.isFlightComplete());
+		assertEquals(2, detector.getCompletedRecords());
+
+		// The connection stays encrypted for the next flight
+		detector.startFlight();
+		assertEquals(0, detector.getCompletedRecords());
+		detector.update(finished, 0, finished.length);
+		assertTrue(detector.isFlightComplete());
+	}
+
+	@Test
+	void alertEndsFlight() {
+		FlightDetector detector = new FlightDetector();
+		detector.update(SERVER_HELLO, 0, SERVER_HELLO.length);
+		detector.update(ALERT, 0, ALERT.length);
+		assertTrue(detector.isFlightComplete());
+		assertTrue(detector.isAlertReceived());
+
+		detector.startFlight();
+		assertFalse(detector.isFlightComplete());
+		assertFalse(detector.isAlertReceived());
+	}
+
+	@Test
+	void incompleteRecordDoesNotEndFlight() {
+		FlightDetector detector = new FlightDetector();
+		detector.update(ALERT, 0, ALERT.length - 1);
+		assertFalse(detector.isFlightComplete());
+		assertFalse(detector.isAtRecordBoundary());
+		detector.update(ALERT, ALERT.length - 1, 1);
+		assertTrue(detector.isFlightComplete());
+	}
+
+	@Test
+	void dataThatIsNotTlsIsNotParseable() {
+		FlightDetector detector = new FlightDetector();
+		byte[] data = "HTTP/1.1 400 Bad Request\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+		detector.update(data, 0, data.length);
+		assertFalse(detector.isParseable());
+		assertFalse(detector.isFlightComplete());
+
+		// Records cannot be found again once the framing is lost
+		detector.startFlight();
+		detector.update(SERVER_HELLO_DONE, 0, SERVER_HELLO_DONE.length);
+		assertFalse(detector.isParseable());
+		assertFalse(detector.isFlightComplete());
+		assertEquals(0, detector.getCompletedRecords());
+	}
+}
@@ -0,0 +1,67 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Receives responses from the embedded target through the complete TLS-Attacker receive path, which keeps fetching
+ * until nothing is returned, and checks that receive mode FLIGHT does not wait for the timeout.
+ */
+class FlightReceiveTest {
+	// Long enough that waiting for it once fails the test
+	static final int TIMEOUT = 2000;
+
+	private static TLSAttackerConnector connector;
+
+	@BeforeAll
+	static void startTarget() throws Exception {
+		connector = new TLSAttackerConnector();
+		connector.cipherSuiteStrings.add("TLS_RSA_WITH_AES_128_CBC_SHA256");
+		connector.receiveMode = ReceiveMode.FLIGHT;
+		connector.timeout = TIMEOUT;
+		connector.quiet = true;
+		connector.startEmbeddedTarget();
+		connector.initialise();
+		connector.loadMessages(connector.messageDir);
+	}
+
+	@AfterAll
+	static void stopTarget() throws Exception {
+		connector.shutdown();
+	}
+
+	@Test
+	void streamTransportReturnsCompleteFlight() throws Exception {
+		assertFlights(TransportType.STREAM);
+	}
+
+	@Test
+	void nioTransportReturnsCompleteFlight() throws Exception {
+		assertFlights(TransportType.NIO);
+	}
+
+	private void assertFlights(TransportType transportType) throws Exception {
+		connector.transportType = transportType;
+		ConnectorSession session = connector.createSession();
+		try {
+			assertResponse(session, "ClientHello", "SERVER_HELLO|CERTIFICATE|SERVER_HELLO_DONE");
+			// The peer closes the connection after the alert, which must still be noticed
+			assertResponse(session, "ClientHello", "ALERT_FATAL_UNEXPECTED_MESSAGE|" + TLSAttackerConnector.SYMBOL_CONNECTION_CLOSED);
+		} finally {
+			session.shutdown();
+		}
+	}
+
+	private static void assertResponse(ConnectorSession session, String inputSymbol, String expected) throws Exception {
+		long start = System.nanoTime();
+		String output = session.processInput(inputSymbol);
+		long duration = (System.nanoTime() - start) / 1000000;
+
+		assertEquals(expected, output);
+		assertTrue(duration < TIMEOUT / 2, inputSymbol + " took " + duration + " ms");
+	}
+}
@@ -0,0 +1,45 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+	@Test
+	void emptyHistogramHasNoPercentiles() {
+		assertEquals(0, new LatencyHistogram().getPercentile(50));
+	}
+
+	@Test
+	void percentileIsUpperBoundOfItsBucket() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for(int i = 0; i < 90; i++) {
+			histogram.record(100000);
+		}
+		for(int i = 0; i < 10; i++) {
+			histogram.record(10000000);
+		}
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(90 * 100000L + 10 * 10000000L, histogram.getTotal());
+		// 100 us falls in the bucket below 128 us
+		assertEquals(128000, histogram.getPercentile(50));
+		assertEquals(128000, histogram.getPercentile(90));
+		// The bucket below 16384 us is limited by the longest duration
+		assertEquals(10000000, histogram.getPercentile(91));
+		assertEquals(10000000, histogram.getPercentile(99));
+		assertEquals(10000000, histogram.getPercentile(100));
+	}
+
+	@Test
+	void longDurationsAreLimitedByTheMaximum() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+
+		assertEquals(1, histogram.getBucketCount(0));
+		assertEquals(1, histogram.getBucketCount(LatencyHistogram.BUCKET_COUNT - 1));
+		assertEquals(1000, histogram.getPercentile(50));
+		assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+	}
+}
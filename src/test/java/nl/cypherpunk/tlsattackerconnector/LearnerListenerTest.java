@@ -0,0 +1,59 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+class LearnerListenerTest {
+	private static boolean isUnixSupported() {
+		try {
+			Class.forName("java.net.UnixDomainSocketAddress");
+			return true;
+		} catch(ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	@Test
+	void unixSocketCarriesTheProtocol() throws Exception {
+		Path dir = Files.createTempDirectory("listener");
+		String path = new File(dir.toFile(), "connector.sock").getPath();
+		if(!isUnixSupported()) {
+			IOException e = assertThrows(IOException.class, () -> LearnerListener.listenUnix(path));
+			assertTrue(e.getMessage().contains("Java 16"), e.getMessage());
+			Files.delete(dir);
+			return;
+		}
+
+		try(LearnerListener listener = LearnerListener.listenUnix(path)) {
+			SocketAddress address = (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class).invoke(null, path);
+			try(SocketChannel client = (SocketChannel) SocketChannel.class.getMethod("open", java.net.ProtocolFamily.class).invoke(null, StandardProtocolFamily.valueOf("UNIX"))) {
+				client.connect(address);
+				try(LearnerListener.Connection connection = listener.accept()) {
+					PrintWriter out = new PrintWriter(Channels.newOutputStream(client), true);
+					out.println("RESET ClientHello");
+					BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+					assertEquals("RESET ClientHello", in.readLine());
+				}
+			}
+		}
+		// The socket file is removed when the listener is closed
+		assertFalse(new File(path).exists());
+		Files.delete(dir);
+	}
+}
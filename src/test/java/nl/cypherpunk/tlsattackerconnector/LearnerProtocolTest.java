@@ -0,0 +1,57 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class LearnerProtocolTest {
+	/**
+	 * Session that records the input symbols instead of executing them
+	 */
+	static class RecordingSession extends ConnectorSession {
+		final List<String> inputs = new ArrayList<>();
+
+		RecordingSession(TLSAttackerConnector connector) {
+			super(connector, null);
+		}
+
+		@Override
+		public String processInput(String inputSymbol) {
+			inputs.add(inputSymbol);
+			return inputSymbol.equals(TLSAttackerConnector.SYMBOL_RESET) ? "" : "OUT_" + inputSymbol;
+		}
+	}
+
+	@Test
+	void onlyLinesStartingWithResetAreQueries() {
+		assertEquals(Arrays.asList("ClientHello", "Finished"), TLSAttackerConnector.parseWord("RESET ClientHello  Finished"));
+		assertNull(TLSAttackerConnector.parseWord("ClientHello Finished"));
+		assertNull(TLSAttackerConnector.parseWord("RESET"));
+		assertNull(TLSAttackerConnector.parseWord("ClientHello"));
+		assertNull(TLSAttackerConnector.parseWord(""));
+	}
+
+	@Test
+	void linesAreFramedExplicitly() throws Exception {
+		TLSAttackerConnector connector = new TLSAttackerConnector();
+		connector.quiet = true;
+		RecordingSession session = new RecordingSession(connector);
+		String input = "ClientHello \n   \nRESET ClientHello Finished \n\tRESET\nFinished\n";
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		connector.handleLearner(new LearnerListener.Connection(output, new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), output, "test"), session);
+
+		// The step with trailing whitespace is not turned into a query, so it is not preceded by a RESET
+		assertEquals(Arrays.asList("ClientHello", "RESET", "ClientHello", "Finished", "RESET", "Finished"), session.inputs);
+		assertEquals("OUT_ClientHello\n" + TLSAttackerConnector.OUTPUT_EMPTY_INPUT + "\nOUT_ClientHello OUT_Finished\n\nOUT_Finished\n",
+				new String(output.toByteArray(), StandardCharsets.UTF_8).replace(System.lineSeparator(), "\n"));
+	}
+}
@@ -0,0 +1,44 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class LoadGeneratorTest {
+	static final String[] MESSAGES = {"ClientHello", "RSAClientKeyExchange", "ChangeCipherSpec", "Finished"};
+
+	@Test
+	void wordsAreSplitOnWhitespace() {
+		List<List<String>> words = LoadGenerator.parseWords(Arrays.asList("ClientHello RSAClientKeyExchange  ChangeCipherSpec\tFinished", " Finished "), MESSAGES);
+
+		assertEquals(Arrays.asList(
+				Arrays.asList("ClientHello", "RSAClientKeyExchange", "ChangeCipherSpec", "Finished"),
+				Arrays.asList("Finished")), words);
+	}
+
+	@Test
+	void resetIsLeftOut() {
+		List<List<String>> words = LoadGenerator.parseWords(Arrays.asList("RESET ClientHello RESET"), MESSAGES);
+
+		assertEquals(Collections.singletonList(Arrays.asList("ClientHello")), words);
+	}
+
+	@Test
+	void unknownSymbolIsRejected() {
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> LoadGenerator.parseWords(Arrays.asList("ClientHello ServerHello"), MESSAGES));
+		assertTrue(e.getMessage().contains("ServerHello"), e.getMessage());
+	}
+
+	@Test
+	void emptyWordIsRejected() {
+		assertThrows(IllegalArgumentException.class, () -> LoadGenerator.parseWords(Arrays.asList("  "), MESSAGES));
+		assertThrows(IllegalArgumentException.class, () -> LoadGenerator.parseWords(Arrays.asList("RESET"), MESSAGES));
+	}
+}
@@ -0,0 +1,64 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.rub.nds.tlsattacker.core.workflow.WorkflowTrace;
+
+class MessageLoaderTest {
+	private File dir;
+
+	@BeforeEach
+	void copyMessages() throws Exception {
+		dir = Files.createTempDirectory("messages").toFile();
+		for(String name: new String[] {"ClientHello", "Finished"}) {
+			Files.copy(new File("messages", name + ".xml").toPath(), new File(dir, name + ".xml").toPath());
+		}
+	}
+
+	@AfterEach
+	void deleteMessages() {
+		for(File file: dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	@Test
+	void everyCopyIsANewTrace() throws Exception {
+		Map<String, LoadedMessage> messages = new MessageLoader(dir, 2).load();
+		assertEquals(2, messages.size());
+
+		LoadedMessage message = messages.get("ClientHello");
+		WorkflowTrace first = message.copy();
+		WorkflowTrace second = message.copy();
+		assertNotNull(first);
+		assertNotNull(second);
+		assertNotSame(first, second);
+		assertNotSame(first.getTlsActions().get(0), second.getTlsActions().get(0));
+	}
+
+	@Test
+	void unchangedMessagesAreKeptOnReload() throws Exception {
+		MessageLoader loader = new MessageLoader(dir, 2);
+		Map<String, LoadedMessage> messages = loader.load();
+
+		Files.copy(new File("messages", "ServerHello.xml").toPath(), new File(dir, "Finished.xml").toPath(), StandardCopyOption.REPLACE_EXISTING);
+		Map<String, LoadedMessage> reloaded = loader.load();
+		assertSame(messages.get("ClientHello"), reloaded.get("ClientHello"));
+		assertNotSame(messages.get("Finished"), reloaded.get("Finished"));
+		assertTrue(loader.getStatistics().contains("1 unchanged files not parsed again"), loader.getStatistics());
+	}
+}
@@ -0,0 +1,79 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class QueryCacheTest {
+	static final String CLOSED = TLSAttackerConnector.SYMBOL_CONNECTION_CLOSED;
+
+	@Test
+	void differentialOutputIsOpenWhileAnyTargetIsOpen() {
+		QueryCache cache = new QueryCache("key");
+		cache.store(Arrays.asList("ClientHello"), "SERVER_HELLO/ALERT_FATAL_HANDSHAKE_FAILURE|" + CLOSED);
+		cache.store(Arrays.asList("ClientHello", "Finished"), "ALERT_FATAL_UNEXPECTED_MESSAGE|" + CLOSED + "/" + CLOSED);
+
+		assertEquals("ALERT_FATAL_UNEXPECTED_MESSAGE|" + CLOSED + "/" + CLOSED, cache.lookup(Arrays.asList("ClientHello", "Finished")));
+		assertNull(cache.lookup(Arrays.asList("ClientHello", "ClientHello")));
+	}
+
+	@Test
+	void differentialOutputIsClosedOnceAllTargetsAreClosed() {
+		QueryCache cache = new QueryCache("key");
+		cache.store(Arrays.asList("Finished"), "ALERT_FATAL_UNEXPECTED_MESSAGE|" + CLOSED + "/" + CLOSED);
+
+		assertEquals(CLOSED, cache.lookup(Arrays.asList("Finished", "ClientHello")));
+		assertNull(cache.store(Arrays.asList("Finished", "ClientHello"), "SERVER_HELLO"));
+		assertEquals(CLOSED, cache.lookup(Arrays.asList("Finished", "ClientHello")));
+	}
+
+	@Test
+	void closedOutputPrunesLongerWords() {
+		QueryCache cache = new QueryCache("key");
+		cache.store(Arrays.asList("ClientHello"), "SERVER_HELLO|CERTIFICATE|SERVER_HELLO_DONE");
+		cache.store(Arrays.asList("ClientHello", "Finished"), "ALERT_FATAL_UNEXPECTED_MESSAGE");
+		cache.store(Arrays.asList("ClientHello", "Finished", "ClientHello"), "-");
+		assertEquals(3, cache.getEntryCount());
+		assertEquals(4, cache.getNodeCount());
+
+		// The target now closes the connection earlier, so the longer words are no longer valid
+		assertEquals("ALERT_FATAL_UNEXPECTED_MESSAGE", cache.store(Arrays.asList("ClientHello", "Finished"), "ALERT_FATAL_UNEXPECTED_MESSAGE|" + CLOSED));
+		assertEquals(2, cache.getEntryCount());
+		assertEquals(3, cache.getNodeCount());
+		assertEquals(CLOSED, cache.lookup(Arrays.asList("ClientHello", "Finished", "ClientHello")));
+		assertEquals(CLOSED, cache.lookup(Arrays.asList("ClientHello", "Finished", "ClientHello", "Finished")));
+	}
+
+	@Test
+	void savedCacheIsLoadedForTheSameKey() throws Exception {
+		File file = File.createTempFile("querycache", ".bin");
+		try {
+			QueryCache cache = new QueryCache("key");
+			cache.store(Arrays.asList("ClientHello"), "SERVER_HELLO|CERTIFICATE|SERVER_HELLO_DONE");
+			cache.store(Arrays.asList("ClientHello", "ClientHello"), "ALERT_FATAL_UNEXPECTED_MESSAGE|" + CLOSED);
+			cache.store(Arrays.asList("Finished"), "ALERT_FATAL_UNEXPECTED_MESSAGE|" + CLOSED);
+			cache.save(file);
+
+			QueryCache loaded = new QueryCache("key");
+			assertTrue(loaded.load(file));
+			assertEquals(cache.getEntryCount(), loaded.getEntryCount());
+			assertEquals(cache.getNodeCount(), loaded.getNodeCount());
+			assertEquals("SERVER_HELLO|CERTIFICATE|SERVER_HELLO_DONE", loaded.lookup(Arrays.asList("ClientHello")));
+			assertEquals("ALERT_FATAL_UNEXPECTED_MESSAGE|" + CLOSED, loaded.lookup(Arrays.asList("ClientHello", "ClientHello")));
+			assertEquals(CLOSED, loaded.lookup(Arrays.asList("Finished", "ClientHello")));
+			assertNull(loaded.lookup(Arrays.asList("ClientHello", "Finished")));
+
+			QueryCache other = new QueryCache("other key");
+			assertFalse(other.load(file));
+			assertEquals(0, other.getEntryCount());
+		} finally {
+			file.delete();
+		}
+	}
+}
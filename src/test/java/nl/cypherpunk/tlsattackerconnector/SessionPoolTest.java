@@ -0,0 +1,109 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import de.rub.nds.tlsattacker.core.config.Config;
+import de.rub.nds.tlsattacker.core.state.State;
+import de.rub.nds.tlsattacker.transport.ConnectionEndType;
+import de.rub.nds.tlsattacker.transport.TransportHandler;
+
+class SessionPoolTest {
+	/**
+	 * Transport handler that only remembers whether it was closed
+	 */
+	static class ClosableTransportHandler extends TransportHandler {
+		volatile boolean closed = false;
+
+		ClosableTransportHandler() {
+			super(0, ConnectionEndType.CLIENT);
+		}
+
+		@Override
+		public void closeConnection() {
+			closed = true;
+		}
+
+		@Override
+		public void closeClientConnection() {
+			closed = true;
+		}
+
+		@Override
+		public void initialize() {
+		}
+
+		@Override
+		public boolean isClosed() {
+			return closed;
+		}
+	}
+
+	@Test
+	void stateFinishedAfterCloseIsClosed() throws Exception {
+		Config config = Config.createConfig();
+		ClosableTransportHandler transportHandler = new ClosableTransportHandler();
+		CountDownLatch creating = new CountDownLatch(1);
+		CountDownLatch closed = new CountDownLatch(1);
+		ConnectorSession session = new ConnectorSession(new TLSAttackerConnector(), config) {
+			@Override
+			protected State createState() throws IOException {
+				creating.countDown();
+				try {
+					closed.await();
+				} catch(InterruptedException e) {
+					throw new IOException(e);
+				}
+				State state = new State(config);
+				state.getTlsContext().setTransportHandler(transportHandler);
+				return state;
+			}
+		};
+
+		SessionPool pool = new SessionPool(session, 1, 10000);
+		pool.start();
+		assertTrue(creating.await(5, TimeUnit.SECONDS));
+		pool.close();
+		closed.countDown();
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while(!transportHandler.closed && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(transportHandler.closed);
+	}
+
+	@Test
+	void failuresAreCountedAndBackedOff() throws Exception {
+		ConnectorSession session = new ConnectorSession(new TLSAttackerConnector(), Config.createConfig()) {
+			@Override
+			protected State createState() throws IOException {
+				throw new IOException("Connection refused");
+			}
+		};
+
+		SessionPool pool = new SessionPool(session, 1, 10000);
+		pool.start();
+		long deadline = System.currentTimeMillis() + 5000;
+		while(pool.getFailures() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		assertEquals(1, pool.getFailures());
+
+		// Every take falls back to connecting directly, but does not prepare a state again during the back-off
+		for(int i = 0; i < 10; i++) {
+			assertThrows(IOException.class, pool::take);
+		}
+		Thread.sleep(20);
+		assertEquals(1, pool.getFailures());
+		assertTrue(pool.getStatistics().contains("1 failed to prepare"), pool.getStatistics());
+		pool.close();
+	}
+}
@@ -0,0 +1,55 @@
+package nl.cypherpunk.tlsattackerconnector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TargetReplicasTest {
+	static final List<String> WORD = Arrays.asList("ClientHello", "ClientHello");
+
+	private static TargetReplicas createReplicas(int maxDivergences) {
+		return new TargetReplicas(Arrays.asList("localhost:4433", "localhost:4434", "localhost:4435"), TargetReplicas.Scheduling.ROUND_ROBIN, 3, maxDivergences);
+	}
+
+	@Test
+	void minorityOutputIsChargedToItsReplica() {
+		TargetReplicas replicas = createReplicas(1);
+		TargetReplicas.Replica first = replicas.getReplicas().get(0);
+		TargetReplicas.Replica second = replicas.getReplicas().get(1);
+		TargetReplicas.Replica third = replicas.getReplicas().get(2);
+
+		// The divergent replica answers first, so it cannot be told apart until the others agree
+		replicas.recordOutput(second, WORD, "ConnectionClosed");
+		replicas.recordOutput(first, WORD, "ALERT_FATAL_UNEXPECTED_MESSAGE|ConnectionClosed");
+		assertEquals(0, first.divergences.get() + second.divergences.get());
+
+		replicas.recordOutput(third, WORD, "ALERT_FATAL_UNEXPECTED_MESSAGE|ConnectionClosed");
+		assertEquals(0, first.divergences.get());
+		assertEquals(1, second.divergences.get());
+		assertEquals(0, third.divergences.get());
+		assertFalse(second.isHealthy());
+		assertTrue(first.isHealthy());
+
+		// Every replica is charged at most once per word
+		replicas.recordOutput(first, WORD, "ALERT_FATAL_UNEXPECTED_MESSAGE|ConnectionClosed");
+		assertEquals(1, second.divergences.get());
+	}
+
+	@Test
+	void inconsistentReplicaIsCharged() {
+		TargetReplicas replicas = createReplicas(3);
+		TargetReplicas.Replica first = replicas.getReplicas().get(0);
+
+		replicas.recordOutput(first, WORD, "ALERT_FATAL_UNEXPECTED_MESSAGE|ConnectionClosed");
+		replicas.recordOutput(first, WORD, "ALERT_FATAL_UNEXPECTED_MESSAGE|ConnectionClosed");
+		assertEquals(0, first.divergences.get());
+		replicas.recordOutput(first, WORD, "ConnectionClosed");
+		assertEquals(1, first.divergences.get());
+		assertTrue(first.isHealthy());
+	}
+}